@@ -0,0 +1,173 @@
+package fr.payetonkawa.products.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.encoder.Encoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.dto.StockReservationResult;
+import fr.payetonkawa.products.event.EventListener;
+import fr.payetonkawa.products.event.EventMetrics;
+import fr.payetonkawa.products.event.EventPublisher;
+import fr.payetonkawa.products.event.OrderedEventDispatcher;
+import fr.payetonkawa.products.event.ProcessedEventLedger;
+import fr.payetonkawa.products.logging.SamplingTurboFilter;
+import fr.payetonkawa.products.messaging.OrderLine;
+import fr.payetonkawa.products.repository.OutboxEventRepository;
+import fr.payetonkawa.products.service.ProductService;
+import fr.payetonkawa.products.service.StockReservationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.boot.logging.logback.StructuredLogEncoder;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Un order.created passé au vrai EventListener, service et base simulés : seule la configuration des logs change.
+// "off" donne le coût hors logs, à retrancher des autres. La sortie est jetée : l'appel système d'écriture
+// n'est compté dans aucun cas.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventLoggingBenchmark {
+
+    private static final byte[] ORDER_CREATED =
+            "{\"payload\":{\"orderId\":42,\"items\":[{\"itemId\":1,\"quantity\":2}]}}".getBytes(StandardCharsets.UTF_8);
+
+    // off : aucun log
+    // text : avant, texte synchrone, réception / traitement / envoi tous écrits
+    // json : après, JSON échantillonné encodé sur le thread appelant (coût CPU total des logs)
+    // json-async : après, tel que déployé ; l'encodage part sur le thread de l'AsyncAppender et n'est pas mesuré
+    @Param({"off", "text", "json", "json-async"})
+    public String logging;
+
+    private LoggerContext context;
+    private EventListener eventListener;
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+        context.putObject(Environment.class.getName(), new StandardEnvironment());
+        Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.INFO);
+
+        switch (logging) {
+            case "off" -> root.setLevel(Level.OFF);
+            case "text" -> {
+                // Les lignes de réception et de traitement étaient en INFO avant l'échantillonnage
+                context.getLogger(EventListener.class).setLevel(Level.DEBUG);
+                root.addAppender(output(patternEncoder()));
+            }
+            case "json" -> {
+                context.addTurboFilter(sampling());
+                root.addAppender(output(structuredEncoder()));
+            }
+            case "json-async" -> {
+                context.addTurboFilter(sampling());
+                AsyncAppender async = new AsyncAppender();
+                async.setContext(context);
+                async.setQueueSize(8192);
+                async.setNeverBlock(true);
+                async.addAppender(output(structuredEncoder()));
+                async.start();
+                root.addAppender(async);
+            }
+            default -> throw new IllegalArgumentException(logging);
+        }
+
+        eventListener = listener();
+        MessageProperties properties = new MessageProperties();
+        properties.setReceivedRoutingKey("order.created");
+        properties.setMessageId("bench");
+        message = new Message(ORDER_CREATED, properties);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.reset();
+    }
+
+    @Benchmark
+    public void orderCreated() throws Exception {
+        eventListener.handleEvent(message);
+    }
+
+    // Bouchons écrits à la main : un mock Mockito parcourt la pile à chaque appel, bien plus cher que les logs mesurés
+    private EventListener listener() {
+        ProductsProperties productsProperties = new ProductsProperties();
+        ProductService productService = new ProductService(null, productsProperties, null, null, null) {
+            @Override
+            public StockReservationResult verifyAndUpdateStock(List<OrderLine> items) {
+                return StockReservationResult.confirmed();
+            }
+        };
+        ProcessedEventLedger ledger = new ProcessedEventLedger(null, productsProperties) {
+            @Override
+            public boolean markProcessed(String eventKey) {
+                return true;
+            }
+        };
+        EventPublisher eventPublisher = new EventPublisher(stub(AmqpTemplate.class), new ObjectMapper(),
+                stub(OutboxEventRepository.class));
+        return new EventListener(productService, eventPublisher, new OrderedEventDispatcher(productsProperties),
+                TransactionOperations.withoutTransaction(), ledger, new EventMetrics(new SimpleMeterRegistry()),
+                new StockReservationService(null, productService, eventPublisher, null, productsProperties));
+    }
+
+    // Toutes les méthodes renvoient null : seul save() de l'outbox est appelé, et sa valeur est ignorée
+    private static <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> null));
+    }
+
+    private SamplingTurboFilter sampling() {
+        SamplingTurboFilter sampling = new SamplingTurboFilter();
+        sampling.setRate(100);
+        sampling.start();
+        return sampling;
+    }
+
+    private Appender<ILoggingEvent> output(Encoder<ILoggingEvent> encoder) {
+        OutputStreamAppender<ILoggingEvent> output = new OutputStreamAppender<>();
+        output.setContext(context);
+        output.setOutputStream(OutputStream.nullOutputStream());
+        output.setEncoder(encoder);
+        output.start();
+        return output;
+    }
+
+    private Encoder<ILoggingEvent> patternEncoder() {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        // Motif console par défaut de Spring Boot, sans les couleurs
+        encoder.setPattern("%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p 1 --- [%15.15t] %-40.40logger{39} : %m%n");
+        encoder.start();
+        return encoder;
+    }
+
+    private Encoder<ILoggingEvent> structuredEncoder() {
+        StructuredLogEncoder encoder = new StructuredLogEncoder();
+        encoder.setContext(context);
+        encoder.setFormat("ecs");
+        encoder.start();
+        return encoder;
+    }
+}
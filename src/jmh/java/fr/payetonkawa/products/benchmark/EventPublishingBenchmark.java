@@ -0,0 +1,70 @@
+package fr.payetonkawa.products.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+import fr.payetonkawa.products.event.EventPublisher;
+import fr.payetonkawa.products.messaging.ExchangeMessage;
+import fr.payetonkawa.products.messaging.ExchangeQueues;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EventPublishingBenchmark {
+
+    private static final String ROUTING_KEY = "product.stock.insufficient";
+
+    private final Gson gson = new Gson();
+    private BlackholeRabbitTemplate rabbitTemplate;
+    private EventPublisher eventPublisher;
+    private Map<String, Object> payload;
+
+    // RabbitTemplate réel (conversion comprise), seul l'envoi sur le réseau est remplacé
+    static class BlackholeRabbitTemplate extends RabbitTemplate {
+        Blackhole blackhole;
+
+        @Override
+        public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+            blackhole.consume(message);
+        }
+    }
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        // Niveau de production : le debug de l'EventPublisher est désactivé
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+        rabbitTemplate = new BlackholeRabbitTemplate();
+        rabbitTemplate.blackhole = blackhole;
+        eventPublisher = new EventPublisher(rabbitTemplate, new ObjectMapper(), null);
+        List<Long> failedItemIds = LongStream.rangeClosed(1, 10).boxed().toList();
+        payload = Map.of("orderId", 42L, "failedItemIds", failedItemIds);
+    }
+
+    // Ancien EventPublisher : Gson, une sérialisation pour l'envoi et une seconde pour le log info
+    @Benchmark
+    public void gsonTwice(Blackhole blackhole) {
+        ExchangeMessage message = ExchangeMessage.builder().payload(payload).build();
+        message.setExchangeId(ExchangeQueues.EXCHANGE_NAME);
+        message.setRoutingKey(ROUTING_KEY);
+        message.setType(ROUTING_KEY);
+        rabbitTemplate.convertAndSend(ExchangeQueues.EXCHANGE_NAME, ROUTING_KEY, gson.toJson(message));
+        blackhole.consume(gson.toJson(message));
+    }
+
+    @Benchmark
+    public void jacksonBytes() {
+        eventPublisher.sendEvent(ROUTING_KEY, ExchangeMessage.builder().payload(payload).build());
+    }
+}
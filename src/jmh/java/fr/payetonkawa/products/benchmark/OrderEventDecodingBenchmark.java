@@ -0,0 +1,67 @@
+package fr.payetonkawa.products.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.payetonkawa.products.messaging.OrderEvent;
+import fr.payetonkawa.products.messaging.OrderEventDecoder;
+import fr.payetonkawa.products.messaging.OrderLine;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OrderEventDecodingBenchmark {
+
+    @Param({"1", "50", "500"})
+    private int lines;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws Exception {
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int i = 0; i < lines; i++) {
+            items.add(Map.of("itemId", 1000L + i, "quantity", 1 + i % 5));
+        }
+        body = objectMapper.writeValueAsBytes(Map.of(
+                "exchangeId", "global.events",
+                "routingKey", "order.created",
+                "correlationId", "c-42",
+                "payload", Map.of("orderId", 42L, "items", items)));
+    }
+
+    // Chemin historique : String, arbre JSON, List<Map>, puis re-lecture de chaque valeur
+    @Benchmark
+    public void treeAndMaps(Blackhole blackhole) throws Exception {
+        String message = new String(body, StandardCharsets.UTF_8);
+        JsonNode payloadNode = objectMapper.readTree(message).get("payload");
+        Long orderId = payloadNode.get("orderId").asLong();
+        List<Map<String, Object>> items = objectMapper.convertValue(payloadNode.get("items"), new TypeReference<>() {});
+        for (Map<String, Object> item : items) {
+            Long productId = Long.valueOf(item.get("itemId").toString());
+            int quantity = (int) item.get("quantity");
+            blackhole.consume(productId);
+            blackhole.consume(quantity);
+        }
+        blackhole.consume(orderId);
+    }
+
+    @Benchmark
+    public void streamingDecoder(Blackhole blackhole) throws Exception {
+        OrderEvent event = OrderEventDecoder.decode("order.created", body);
+        for (OrderLine line : event.items()) {
+            blackhole.consume(line.itemId());
+            blackhole.consume(line.quantity());
+        }
+        blackhole.consume(event.orderId());
+    }
+}
@@ -0,0 +1,40 @@
+package fr.payetonkawa.products.benchmark;
+
+import fr.payetonkawa.products.dto.ProductDto;
+import fr.payetonkawa.products.entity.Product;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProductDtoMappingBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int size;
+
+    private List<Product> products;
+
+    @Setup
+    public void setUp() {
+        products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Product product = new Product();
+            product.setId((long) i);
+            product.setName("Café " + i);
+            product.setPrice(4.5 + i % 10);
+            product.setDescription("Arabica torréfié, lot " + i);
+            product.setColor(i % 2 == 0 ? "brun" : null);
+            product.setStock(i % 100);
+            products.add(product);
+        }
+    }
+
+    @Benchmark
+    public List<ProductDto> fromEntities() {
+        return ProductDto.fromEntities(products);
+    }
+}
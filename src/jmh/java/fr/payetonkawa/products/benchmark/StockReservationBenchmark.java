@@ -0,0 +1,120 @@
+package fr.payetonkawa.products.benchmark;
+
+import fr.payetonkawa.products.ProductsApplication;
+import fr.payetonkawa.products.dto.BatchItemResult;
+import fr.payetonkawa.products.dto.ProductDto;
+import fr.payetonkawa.products.dto.StockReservationResult;
+import fr.payetonkawa.products.event.EventListener;
+import fr.payetonkawa.products.messaging.OrderLine;
+import fr.payetonkawa.products.service.ProductService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Contexte Spring complet sur H2 en mémoire, sans broker : mesure le coût applicatif + JPA, pas celui de Postgres
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StockReservationBenchmark {
+
+    private static final int CATALOG_SIZE = 500;
+
+    // Remplace le RabbitTemplate de Spring Boot : les envois (product.updated, outbox) ne sortent pas du process
+    @Configuration(proxyBeanMethods = false)
+    static class NoBrokerConfig {
+
+        @Bean
+        RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
+            return new RabbitTemplate(connectionFactory) {
+                @Override
+                public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+                    // aucun broker pendant la mesure
+                }
+            };
+        }
+    }
+
+    @Param({"atomic", "optimistic", "in-memory"})
+    private String updateMode;
+
+    @Param({"1", "50"})
+    private int lines;
+
+    private ConfigurableApplicationContext context;
+    private ProductService productService;
+    private EventListener eventListener;
+    private List<OrderLine> order;
+    private String orderPayload;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(ProductsApplication.class, NoBrokerConfig.class)
+                .web(WebApplicationType.NONE)
+                // Arguments de ligne de commande : ils priment sur application.yaml
+                .run("--spring.datasource.url=jdbc:h2:mem:bench-" + UUID.randomUUID() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.rabbitmq.listener.simple.auto-startup=false",
+                        "--products.stock.update-mode=" + updateMode,
+                        "--products.events.workers=0",
+                        // Le relais de l'outbox tournerait en parallèle de la mesure
+                        "--products.outbox.poll-interval=1d",
+                        "--logging.level.root=WARN");
+        productService = context.getBean(ProductService.class);
+        eventListener = context.getBean(EventListener.class);
+
+        List<ProductDto> catalog = new ArrayList<>(CATALOG_SIZE);
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            catalog.add(ProductDto.builder()
+                    .name("Café " + i)
+                    .price(4.5)
+                    .description("bench")
+                    .stock(1_000_000_000)
+                    .build());
+        }
+        List<Long> ids = productService.createProducts(catalog).stream()
+                .map(BatchItemResult::getId)
+                .toList();
+
+        order = new ArrayList<>(lines);
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            order.add(new OrderLine(ids.get(i), 1));
+            items.append(i == 0 ? "" : ",").append("{\"itemId\":").append(ids.get(i)).append(",\"quantity\":1}");
+        }
+        orderPayload = "\"payload\":{\"orderId\":1,\"items\":[" + items + "]}}";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public StockReservationResult verifyAndUpdateStock() {
+        return productService.verifyAndUpdateStock(order);
+    }
+
+    // Chemin complet : décodage, déduplication, réservation et écriture dans l'outbox dans une transaction
+    @Benchmark
+    public void handleOrderCreated() throws Exception {
+        MessageProperties properties = new MessageProperties();
+        properties.setReceivedRoutingKey("order.created");
+        byte[] body = ("{\"correlationId\":\"bench-" + (++sequence) + "\"," + orderPayload).getBytes(StandardCharsets.UTF_8);
+        eventListener.handleEvent(new Message(body, properties));
+    }
+}
@@ -0,0 +1,48 @@
+package fr.payetonkawa.products.loadtest;
+
+import org.apache.qpid.server.SystemLauncher;
+import org.apache.qpid.server.model.SystemConfig;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+// Broker AMQP 0-9-1 en mémoire (Qpid Broker-J) : remplace le RabbitMQ du docker-compose
+final class EmbeddedAmqpBroker implements AutoCloseable {
+
+    private final SystemLauncher launcher = new SystemLauncher();
+    private final int port;
+
+    private EmbeddedAmqpBroker(int port) {
+        this.port = port;
+    }
+
+    static EmbeddedAmqpBroker start() throws Exception {
+        EmbeddedAmqpBroker broker = new EmbeddedAmqpBroker(freePort());
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(SystemConfig.TYPE, "Memory");
+        attributes.put(SystemConfig.INITIAL_CONFIGURATION_LOCATION, Objects.requireNonNull(
+                EmbeddedAmqpBroker.class.getClassLoader().getResource("qpid-loadtest.json")).toExternalForm());
+        attributes.put(SystemConfig.CONTEXT, Map.of("qpid.amqp_port", broker.port));
+        attributes.put(SystemConfig.STARTUP_LOGGED_TO_SYSTEM_OUT, false);
+        broker.launcher.startup(attributes);
+        return broker;
+    }
+
+    int port() {
+        return port;
+    }
+
+    @Override
+    public void close() {
+        launcher.shutdown();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package fr.payetonkawa.products.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.dto.BatchItemResult;
+import fr.payetonkawa.products.dto.ProductDto;
+import fr.payetonkawa.products.entity.Product;
+import fr.payetonkawa.products.messaging.ExchangeQueues;
+import fr.payetonkawa.products.repository.ProductRepository;
+import fr.payetonkawa.products.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// mvn -Ploadtest test -Dtest=EndToEndLoadTest [-Dloadtest.threads=virtual] [-Dloadtest.orders=5000] [-Dproducts.stock.update-mode=in-memory]
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class EndToEndLoadTest {
+
+    private static final int PRODUCTS = 200;
+    private static final int INITIAL_STOCK = 40;
+    private static final int HTTP_CLIENTS = Integer.getInteger("loadtest.httpClients", 50);
+    private static final int REQUESTS_PER_CLIENT = Integer.getInteger("loadtest.requestsPerClient", 200);
+    private static final int ORDERS = Integer.getInteger("loadtest.orders", 3_000);
+    private static final int ORDER_PUBLISHERS = 8;
+    private static final double CANCEL_RATIO = 0.2;
+    // Redélivrances simulées : même correlationId publié deux fois
+    private static final double DUPLICATE_RATIO = 0.05;
+    private static final String REPLIES_QUEUE = "loadtest.stock.replies";
+    private static final Duration SETTLE_TIMEOUT = Duration.ofMinutes(2);
+
+    // Arrêté avec la JVM, après le contexte Spring qui s'y connecte encore à la fermeture
+    private static EmbeddedAmqpBroker broker;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) throws Exception {
+        broker = EmbeddedAmqpBroker.start();
+        registry.add("spring.rabbitmq.host", () -> "localhost");
+        registry.add("spring.rabbitmq.port", broker::port);
+        registry.add("spring.rabbitmq.virtual-host", () -> "default");
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:loadtest-e2e;MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        registry.add("spring.datasource.driver-class-name", () -> "org.h2.Driver");
+        registry.add("spring.threads.virtual.enabled", () -> "virtual".equals(System.getProperty("loadtest.threads")));
+        registry.add("logging.level.fr.payetonkawa", () -> "WARN");
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductsProperties productsProperties;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private AmqpAdmin amqpAdmin;
+
+    @Autowired
+    private ConnectionFactory connectionFactory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Long, List<long[]>> orderLines = new ConcurrentHashMap<>();
+    private final Map<Long, Long> publishedAt = new ConcurrentHashMap<>();
+    private final Map<Long, Long> replyLatencies = new ConcurrentHashMap<>();
+    private final Set<Long> confirmedOrders = ConcurrentHashMap.newKeySet();
+    private final Set<Long> cancelledOrders = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger duplicateReplies = new AtomicInteger();
+    // L'outbox publie au moins une fois : un message renvoyé après un accusé perdu garde son messageId
+    private final Set<String> replyMessageIds = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger redeliveredReplies = new AtomicInteger();
+
+    @Test
+    void mixedRestAndOrderTraffic() throws Exception {
+        List<Long> productIds = seedCatalog();
+        SimpleMessageListenerContainer replies = listenToReplies();
+        try {
+            long start = System.nanoTime();
+            Map<String, List<Long>> httpLatencies;
+            try (ExecutorService load = Executors.newVirtualThreadPerTaskExecutor()) {
+                Future<Map<String, List<Long>>> http = load.submit(() -> driveHttp(productIds));
+                Future<?> orders = load.submit(() -> {
+                    publishOrders(productIds);
+                    return null;
+                });
+                orders.get();
+                httpLatencies = http.get();
+            }
+            double httpSeconds = (System.nanoTime() - start) / 1e9;
+
+            awaitReplies();
+            double eventSeconds = (System.nanoTime() - start) / 1e9;
+            Map<Long, Integer> expectedStock = expectedStock(productIds);
+            int violations = awaitStock(expectedStock);
+
+            report(httpLatencies, httpSeconds, eventSeconds, violations);
+            assertEquals(0, violations, "stock mismatches or oversell detected");
+            assertEquals(0, duplicateReplies.get(), "an order was answered twice");
+        } finally {
+            replies.stop();
+        }
+    }
+
+    private List<Long> seedCatalog() {
+        List<ProductDto> catalog = new ArrayList<>(PRODUCTS);
+        for (int i = 0; i < PRODUCTS; i++) {
+            catalog.add(ProductDto.builder()
+                    .name("Café " + i)
+                    .price(4.5 + i % 7)
+                    .description("load test")
+                    .stock(INITIAL_STOCK)
+                    .build());
+        }
+        return productService.createProducts(catalog).stream().map(BatchItemResult::getId).toList();
+    }
+
+    private SimpleMessageListenerContainer listenToReplies() {
+        Queue queue = new Queue(REPLIES_QUEUE, false, false, true);
+        amqpAdmin.declareQueue(queue);
+        amqpAdmin.declareBinding(BindingBuilder.bind(queue)
+                .to(new TopicExchange(ExchangeQueues.EXCHANGE_NAME))
+                .with("product.stock.*"));
+
+        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueueNames(REPLIES_QUEUE);
+        container.setMessageListener(this::onReply);
+        container.start();
+        return container;
+    }
+
+    private void onReply(Message message) {
+        try {
+            String messageId = message.getMessageProperties().getMessageId();
+            if (messageId != null && !replyMessageIds.add(messageId)) {
+                redeliveredReplies.incrementAndGet();
+                return;
+            }
+            JsonNode json = objectMapper.readTree(message.getBody());
+            long orderId = json.path("payload").path("orderId").asLong();
+            Long published = publishedAt.get(orderId);
+            if (published == null || replyLatencies.putIfAbsent(orderId, System.nanoTime() - published) != null) {
+                duplicateReplies.incrementAndGet();
+                return;
+            }
+            if ("product.stock.confirmed".equals(json.path("routingKey").asText())) {
+                confirmedOrders.add(orderId);
+                // Annulation uniquement d'une commande confirmée : le service restaure sans vérifier
+                if (ThreadLocalRandom.current().nextDouble() < CANCEL_RATIO) {
+                    cancelledOrders.add(orderId);
+                    publishOrder("order.cancelled", orderId, orderLines.get(orderId), "cancel-" + orderId);
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void publishOrders(List<Long> productIds) throws Exception {
+        AtomicLong nextOrderId = new AtomicLong(1);
+        try (ExecutorService publishers = Executors.newFixedThreadPool(ORDER_PUBLISHERS)) {
+            for (int p = 0; p < ORDER_PUBLISHERS; p++) {
+                publishers.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long orderId;
+                    while ((orderId = nextOrderId.getAndIncrement()) <= ORDERS) {
+                        List<long[]> lines = new ArrayList<>();
+                        Set<Long> used = new HashSet<>();
+                        int lineCount = 1 + random.nextInt(5);
+                        while (lines.size() < lineCount) {
+                            // Distribution biaisée : quelques produits très demandés, pour provoquer des ruptures
+                            long productId = productIds.get((int) Math.min(productIds.size() - 1,
+                                    Math.abs(random.nextGaussian()) * PRODUCTS / 6));
+                            if (used.add(productId)) {
+                                lines.add(new long[]{productId, 1 + random.nextInt(3)});
+                            }
+                        }
+                        orderLines.put(orderId, lines);
+                        publishedAt.put(orderId, System.nanoTime());
+                        publishOrder("order.created", orderId, lines, "created-" + orderId);
+                        if (random.nextDouble() < DUPLICATE_RATIO) {
+                            publishOrder("order.created", orderId, lines, "created-" + orderId);
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+    }
+
+    private void publishOrder(String routingKey, long orderId, List<long[]> lines, String correlationId) {
+        List<Map<String, Object>> items = lines.stream()
+                .map(line -> Map.<String, Object>of("itemId", line[0], "quantity", (int) line[1]))
+                .toList();
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(Map.of(
+                    "routingKey", routingKey,
+                    "correlationId", correlationId,
+                    "payload", Map.of("orderId", orderId, "items", items)));
+            Message message = MessageBuilder.withBody(body)
+                    .setContentType(MessageProperties.CONTENT_TYPE_JSON)
+                    .setTimestamp(new Date())
+                    .build();
+            rabbitTemplate.send(ExchangeQueues.EXCHANGE_NAME, routingKey, message);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Boucle fermée : lecture unitaire, page, lot d'ids et création, comme le trafic du front
+    private Map<String, List<Long>> driveHttp(List<Long> productIds) throws Exception {
+        Map<String, List<Long>> latencies = new ConcurrentHashMap<>();
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        String base = "http://localhost:" + port + "/v1";
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < HTTP_CLIENTS; c++) {
+                clients.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < REQUESTS_PER_CLIENT; i++) {
+                        double pick = random.nextDouble();
+                        String kind;
+                        HttpRequest request;
+                        if (pick < 0.6) {
+                            kind = "GET /v1/{id}";
+                            request = HttpRequest.newBuilder(URI.create(base + "/" + productIds.get(random.nextInt(PRODUCTS)))).build();
+                        } else if (pick < 0.75) {
+                            kind = "GET /v1?limit";
+                            request = HttpRequest.newBuilder(URI.create(base + "?limit=50&after=" + productIds.get(random.nextInt(PRODUCTS)))).build();
+                        } else if (pick < 0.9) {
+                            kind = "GET /v1?ids";
+                            request = HttpRequest.newBuilder(URI.create(base + "?ids=" + productIds.get(random.nextInt(PRODUCTS))
+                                    + "," + productIds.get(random.nextInt(PRODUCTS)) + "," + productIds.get(random.nextInt(PRODUCTS)))).build();
+                        } else {
+                            kind = "POST /v1";
+                            request = HttpRequest.newBuilder(URI.create(base))
+                                    .header("Content-Type", "application/json")
+                                    .POST(HttpRequest.BodyPublishers.ofString(
+                                            "{\"name\":\"new\",\"price\":3.2,\"description\":\"d\",\"stock\":5}"))
+                                    .build();
+                        }
+                        long sent = System.nanoTime();
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        long elapsed = System.nanoTime() - sent;
+                        assertTrue(response.statusCode() < 500, kind + " returned " + response.statusCode());
+                        latencies.computeIfAbsent(kind, k -> Collections.synchronizedList(new ArrayList<>())).add(elapsed);
+                    }
+                    return null;
+                });
+            }
+        }
+        return latencies;
+    }
+
+    private void awaitReplies() throws InterruptedException {
+        long deadline = System.nanoTime() + SETTLE_TIMEOUT.toNanos();
+        while (replyLatencies.size() < ORDERS && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        assertEquals(ORDERS, replyLatencies.size(), "orders left without a stock reply");
+    }
+
+    private Map<Long, Integer> expectedStock(List<Long> productIds) {
+        Map<Long, Integer> expected = new HashMap<>();
+        productIds.forEach(id -> expected.put(id, INITIAL_STOCK));
+        for (Long orderId : confirmedOrders) {
+            if (cancelledOrders.contains(orderId)) {
+                continue;
+            }
+            for (long[] line : orderLines.get(orderId)) {
+                expected.merge(line[0], (int) -line[1], Integer::sum);
+            }
+        }
+        return expected;
+    }
+
+    // Les annulations n'ont pas de réponse : on attend que la base converge vers le stock attendu
+    private int awaitStock(Map<Long, Integer> expected) throws InterruptedException {
+        long deadline = System.nanoTime() + SETTLE_TIMEOUT.toNanos();
+        int violations;
+        do {
+            violations = 0;
+            for (Product product : productRepository.findAllById(expected.keySet())) {
+                if (product.getStock() < 0 || product.getStock() != expected.get(product.getId())) {
+                    violations++;
+                }
+            }
+            if (violations > 0) {
+                Thread.sleep(200);
+            }
+        } while (violations > 0 && System.nanoTime() < deadline);
+        return violations;
+    }
+
+    private void report(Map<String, List<Long>> httpLatencies, double httpSeconds, double eventSeconds, int violations) {
+        String threads = "virtual".equals(System.getProperty("loadtest.threads")) ? "virtual" : "platform";
+        int httpRequests = httpLatencies.values().stream().mapToInt(List::size).sum();
+        System.out.printf("%n== End-to-end load test (%s threads, stock %s) ==%n", threads,
+                productsProperties.getStock().getUpdateMode());
+        System.out.printf("HTTP   %d requests in %.1f s -> %.0f req/s%n", httpRequests, httpSeconds, httpRequests / httpSeconds);
+        System.out.printf("%-16s %8s %9s %9s %9s%n", "endpoint", "count", "p50 ms", "p95 ms", "p99 ms");
+        new TreeMap<>(httpLatencies).forEach((kind, values) -> printPercentiles(kind, values));
+        System.out.printf("Orders %d in %.1f s -> %.0f orders/s, %d confirmed, %d insufficient, %d cancelled%n",
+                ORDERS, eventSeconds, ORDERS / eventSeconds, confirmedOrders.size(),
+                ORDERS - confirmedOrders.size(), cancelledOrders.size());
+        printPercentiles("order -> reply", new ArrayList<>(replyLatencies.values()));
+        System.out.printf("Oversell / stock mismatches: %d, duplicate replies: %d, relay redeliveries: %d%n",
+                violations, duplicateReplies.get(), redeliveredReplies.get());
+    }
+
+    private static void printPercentiles(String label, List<Long> values) {
+        long[] sorted = values.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("%-16s %8d %9.1f %9.1f %9.1f%n", label, sorted.length,
+                sorted[sorted.length / 2] / 1e6, sorted[(int) (sorted.length * 0.95)] / 1e6,
+                sorted[(int) (sorted.length * 0.99)] / 1e6);
+    }
+}
@@ -0,0 +1,58 @@
+package fr.payetonkawa.products.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.dto.ProductDto;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+@Component
+public class ProductCache {
+
+    private final Cache<Long, ProductDto> cache;
+
+    public ProductCache(ProductsProperties productsProperties) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(productsProperties.getCache().getMaximumSize())
+                .expireAfterWrite(productsProperties.getCache().getTtl())
+                .recordStats()
+                .build();
+    }
+
+    public Optional<ProductDto> get(Long id, Function<Long, Optional<ProductDto>> loader) {
+        // Les produits absents ne sont pas mis en cache
+        return Optional.ofNullable(cache.get(id, key -> loader.apply(key).orElse(null)));
+    }
+
+    public Optional<ProductDto> peek(Long id) {
+        return Optional.ofNullable(cache.getIfPresent(id));
+    }
+
+    public Map<Long, ProductDto> getAll(Collection<Long> ids, Function<List<Long>, Map<Long, ProductDto>> loader) {
+        return cache.getAll(ids, missing -> loader.apply(List.copyOf(missing)));
+    }
+
+    public void evict(Long id) {
+        cache.invalidate(id);
+    }
+
+    public void evictAll(Collection<Long> ids) {
+        cache.invalidateAll(ids);
+    }
+
+    public Cache<Long, ProductDto> getNativeCache() {
+        return cache;
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+}
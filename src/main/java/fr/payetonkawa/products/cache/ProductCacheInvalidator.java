@@ -0,0 +1,63 @@
+package fr.payetonkawa.products.cache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.payetonkawa.products.datasource.ReplicaLagMonitor;
+import fr.payetonkawa.products.event.EventPublisher;
+import fr.payetonkawa.products.event.ProductsChangedEvent;
+import fr.payetonkawa.products.messaging.ExchangeMessage;
+import fr.payetonkawa.products.messaging.ExchangeQueues;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductCacheInvalidator {
+
+    private final ProductCache productCache;
+    private final EventPublisher eventPublisher;
+    private final ObjectProvider<ReplicaLagMonitor> replicaLagMonitor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Écrit dans l'outbox avec la modification : le thread qui change le stock n'attend jamais le broker
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void broadcast(ProductsChangedEvent event) {
+        eventPublisher.enqueue(ExchangeQueues.PRODUCT_UPDATED_ROUTING_KEY, ExchangeMessage.builder()
+                .payload(Map.of("productIds", List.copyOf(event.productIds())))
+                .build());
+    }
+
+    // Après commit, sinon une lecture concurrente pourrait remettre l'ancienne valeur en cache
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        evict(event.productIds());
+    }
+
+    @RabbitListener(queues = "#{productUpdatesQueue.name}")
+    public void handleProductUpdated(Message message) throws Exception {
+        JsonNode productIds = objectMapper.readTree(message.getBody()).path("payload").path("productIds");
+        List<Long> ids = new ArrayList<>();
+        productIds.forEach(id -> ids.add(id.asLong()));
+        evict(ids);
+        log.debug("🧹 Evicted products {} from cache", ids);
+    }
+
+    private void evict(Collection<Long> ids) {
+        productCache.evictAll(ids);
+        // Avec un réplica, une lecture concurrente peut encore y trouver l'ancienne valeur
+        replicaLagMonitor.ifAvailable(monitor -> monitor.afterReplicaCatchUp(() -> productCache.evictAll(ids)));
+    }
+
+}
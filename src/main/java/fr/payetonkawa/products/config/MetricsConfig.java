@@ -0,0 +1,17 @@
+package fr.payetonkawa.products.config;
+
+import fr.payetonkawa.products.cache.ProductCache;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    // cache_gets{result="hit|miss"}, cache_evictions... sur le cache produits (recordStats est actif)
+    @Bean
+    public MeterBinder productCacheMetrics(ProductCache productCache) {
+        return registry -> CaffeineCacheMetrics.monitor(registry, productCache.getNativeCache(), "products");
+    }
+}
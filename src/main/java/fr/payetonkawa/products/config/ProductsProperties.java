@@ -0,0 +1,110 @@
+package fr.payetonkawa.products.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "products")
+public class ProductsProperties {
+
+    private final Stock stock = new Stock();
+    private final Cache cache = new Cache();
+    private final Events events = new Events();
+    private final Outbox outbox = new Outbox();
+    private final Deduplication deduplication = new Deduplication();
+    private final Reservations reservations = new Reservations();
+    private final Changes changes = new Changes();
+    private final Replica replica = new Replica();
+
+    @Data
+    public static class Stock {
+        private StockUpdateMode updateMode = StockUpdateMode.ATOMIC;
+        // Mode IN_MEMORY : fréquence et taille des reports du journal vers la table product
+        private Duration flushInterval = Duration.ofMillis(100);
+        private int flushBatchSize = 10_000;
+        // Mode IN_MEMORY : false sur toutes les instances sauf celle qui consomme les événements de commande
+        private boolean consumer = true;
+
+        // Les compteurs vivent dans la JVM consommatrice : ailleurs, écrire le stock les laisserait périmés
+        public boolean isStockOwner() {
+            return updateMode != StockUpdateMode.IN_MEMORY || consumer;
+        }
+    }
+
+    @Data
+    public static class Cache {
+        private long maximumSize = 10_000;
+        private Duration ttl = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Events {
+        // 0 : traitement sur le thread du listener, sinon nombre de workers partitionnés
+        private int workers = 0;
+        // Tentatives sur place avant de rendre le message à RabbitMQ (mode workers)
+        private int attempts = 3;
+        private Duration retryBackoff = Duration.ofMillis(100);
+        // > 1 : les messages sont consommés par lots, une transaction par lot (prioritaire sur workers)
+        private int batchSize = 0;
+        // Un lot incomplet part dès que la file reste vide pendant ce délai
+        private Duration batchReceiveTimeout = Duration.ofMillis(20);
+
+        public boolean isBatchEnabled() {
+            return batchSize > 1;
+        }
+    }
+
+    @Data
+    public static class Outbox {
+        private Duration pollInterval = Duration.ofMillis(200);
+        private int batchSize = 100;
+        private Duration confirmTimeout = Duration.ofSeconds(5);
+        // Délai doublé à chaque échec d'une ligne, plafonné ; au-delà de maxAttempts la ligne part dans outbox_dead_letter
+        private int maxAttempts = 20;
+        private Duration retryBackoff = Duration.ofSeconds(1);
+        private Duration maxRetryBackoff = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Deduplication {
+        private long cacheSize = 100_000;
+        // Doit couvrir la fenêtre de redélivrance du broker et des producteurs
+        private Duration retention = Duration.ofDays(7);
+        private Duration purgeInterval = Duration.ofHours(1);
+    }
+
+    @Data
+    public static class Reservations {
+        // 0 : désactivé. Sinon le service commandes doit publier order.completed une fois la commande payée
+        private Duration ttl = Duration.ZERO;
+        private Duration expiryInterval = Duration.ofSeconds(30);
+        private int expiryBatchSize = 1_000;
+    }
+
+    @Data
+    public static class Changes {
+        // Doit dépasser le délai entre l'attribution de change_seq et le commit, écart d'horloge entre instances compris
+        private Duration settleDelay = Duration.ofSeconds(1);
+        // Un consommateur arrêté plus longtemps doit repartir d'une synchronisation complète (since=0)
+        private Duration tombstoneRetention = Duration.ofDays(30);
+        private Duration purgeInterval = Duration.ofHours(1);
+    }
+
+    @Data
+    public static class Replica {
+        // Au-delà, les lectures repassent sur le primaire jusqu'à ce que le réplica ait rattrapé son retard
+        private Duration maxLag = Duration.ofSeconds(5);
+        private Duration lagCheckInterval = Duration.ofSeconds(1);
+    }
+
+    public enum StockUpdateMode {
+        // UPDATE ... WHERE stock >= :quantity, aucun verrou applicatif
+        ATOMIC,
+        // lecture + écriture protégées par Product.version
+        OPTIMISTIC,
+        // compteurs en mémoire + journal, reportés en différé : une seule instance doit consommer les commandes
+        IN_MEMORY
+    }
+}
@@ -2,6 +2,10 @@ package fr.payetonkawa.products.config;
 
 import fr.payetonkawa.products.messaging.ExchangeQueues;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -19,7 +23,60 @@ public class RabbitMQConfig {
     }
 
     @Bean
-    public Binding productBinding(Queue productQueue, TopicExchange exchange) {
+    public Binding productBinding(@Qualifier("productQueue") Queue productQueue, TopicExchange exchange) {
         return BindingBuilder.bind(productQueue).to(exchange).with("order.*");
     }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory orderEventsContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            ProductsProperties productsProperties) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        if (productsProperties.getEvents().isBatchEnabled() || !productsProperties.getStock().isStockOwner()) {
+            // La file est consommée par orderEventsBatchContainerFactory, ou par l'instance qui tient le stock
+            factory.setAutoStartup(false);
+        } else if (productsProperties.getEvents().getWorkers() > 0) {
+            // Un seul consommateur garde l'ordre d'arrivée, les workers acquittent après traitement
+            factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+            factory.setConcurrentConsumers(1);
+            factory.setMaxConcurrentConsumers(1);
+        }
+        return factory;
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory orderEventsBatchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            ProductsProperties productsProperties) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        ProductsProperties.Events events = productsProperties.getEvents();
+        if (!events.isBatchEnabled() || !productsProperties.getStock().isStockOwner()) {
+            factory.setAutoStartup(false);
+            return factory;
+        }
+        // Un seul consommateur garde l'ordre d'arrivée ; chaque message est acquitté après le commit du lot
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(events.getBatchSize());
+        factory.setReceiveTimeout(events.getBatchReceiveTimeout().toMillis());
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        return factory;
+    }
+
+    // Une file exclusive par réplique pour que chaque instance invalide son cache
+    @Bean
+    public Queue productUpdatesQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding productUpdatesBinding(@Qualifier("productUpdatesQueue") Queue productUpdatesQueue, TopicExchange exchange) {
+        return BindingBuilder.bind(productUpdatesQueue).to(exchange).with(ExchangeQueues.PRODUCT_UPDATED_ROUTING_KEY);
+    }
 }
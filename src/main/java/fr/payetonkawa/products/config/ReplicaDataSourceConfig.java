@@ -0,0 +1,71 @@
+package fr.payetonkawa.products.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import fr.payetonkawa.products.datasource.ReplicaLagMonitor;
+import fr.payetonkawa.products.datasource.ReplicaRoutingDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.TaskScheduler;
+
+import javax.sql.DataSource;
+
+// Avec spring.datasource.replica.url, les transactions readOnly lisent sur le réplica ; sans, un seul pool comme avant
+@Configuration
+@ConditionalOnProperty(prefix = "spring.datasource.replica", name = "url")
+public class ReplicaDataSourceConfig {
+
+    // Migrations directement sur le primaire, le réplica les reçoit par la réplication
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    // Identifiants du primaire par défaut ; pool dimensionné par spring.datasource.replica.hikari
+    @Bean
+    @ConfigurationProperties("spring.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(DataSourceProperties primary, Environment environment) throws Exception {
+        DataSourceProperties replica = Binder.get(environment)
+                .bind("spring.datasource.replica", DataSourceProperties.class)
+                .get();
+        if (replica.getUsername() == null) {
+            replica.setUsername(primary.getUsername());
+            replica.setPassword(primary.getPassword());
+        }
+        replica.afterPropertiesSet();
+        HikariDataSource dataSource = replica.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(@Qualifier("primaryDataSource") DataSource primary,
+                                               @Qualifier("replicaDataSource") DataSource replica,
+                                               TaskScheduler taskScheduler,
+                                               ProductsProperties productsProperties) {
+        return new ReplicaLagMonitor(primary, replica, taskScheduler,
+                productsProperties.getReplica().getMaxLag(), productsProperties.getReplica().getLagCheckInterval());
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica,
+                                 ReplicaLagMonitor replicaLagMonitor) {
+        return new LazyConnectionDataSourceProxy(
+                new ReplicaRoutingDataSource(primary, replica, replicaLagMonitor::isReplicaUsable));
+    }
+}
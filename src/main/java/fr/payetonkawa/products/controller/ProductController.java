@@ -1,29 +1,146 @@
 package fr.payetonkawa.products.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.payetonkawa.products.dto.BatchItemResult;
+import fr.payetonkawa.products.dto.ProductChange;
+import fr.payetonkawa.products.dto.ProductChangePage;
 import fr.payetonkawa.products.dto.ProductDto;
+import fr.payetonkawa.products.dto.ProductPage;
+import fr.payetonkawa.products.dto.ProductSearch;
+import fr.payetonkawa.products.dto.ProductSearchPage;
+import fr.payetonkawa.products.dto.ProductVersion;
+import fr.payetonkawa.products.exception.StockNotOwnedException;
+import fr.payetonkawa.products.service.ProductChangeFeed;
 import fr.payetonkawa.products.service.ProductService;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/v1")
 @AllArgsConstructor
 public class ProductController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final ProductService productService;
+    private final ProductChangeFeed productChangeFeed;
+    private final ObjectMapper objectMapper;
 
+    // Sans limit ni after : tout le catalogue, comme avant la pagination, pour les clients existants
     @GetMapping
-    public List<ProductDto> getAllProducts() {
-        return productService.getAllProducts();
+    public ResponseEntity<List<ProductDto>> getAllProducts(
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
+        ProductPage page = after == null && limit == null
+                ? productService.getAllProducts()
+                : productService.getProducts(after, limit == null ? ProductService.DEFAULT_PAGE_SIZE : limit);
+        // Validateurs de la page : le 304 est décidé avant la sérialisation
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(pageEtag(page));
+        page.getItems().stream()
+                .map(ProductDto::getUpdatedAt)
+                .filter(Objects::nonNull)
+                .max(Instant::compareTo)
+                .ifPresent(response::lastModified);
+        if (page.hasNext()) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor().toString());
+        }
+        return response.body(page.getItems());
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<List<ProductDto>> searchProducts(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) String color,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "" + ProductService.DEFAULT_PAGE_SIZE) int limit) {
+        ProductSearchPage page = productService.searchProducts(ProductSearch.builder()
+                .text(q == null || q.isBlank() ? null : q)
+                .color(color)
+                .minPrice(minPrice)
+                .maxPrice(maxPrice)
+                .sort(ProductSearch.Sort.parse(sort))
+                .after(after == null ? null : ProductSearch.Cursor.decode(after))
+                .limit(limit)
+                .build());
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.hasNext()) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+
+    // Synchronisation incrémentale : le curseur est toujours renvoyé, à repasser dans since
+    @GetMapping("/changes")
+    public ResponseEntity<List<ProductChange>> getChanges(
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "" + ProductService.DEFAULT_PAGE_SIZE) int limit) {
+        ProductChangePage page = productChangeFeed.getChanges(since, limit);
+        return ResponseEntity.ok()
+                .header(NEXT_CURSOR_HEADER, Long.toString(page.getCursor()))
+                .body(page.getChanges());
+    }
+
+    @GetMapping(params = "ids")
+    public List<ProductDto> getProductsByIds(@RequestParam List<Long> ids) {
+        return productService.getProductsByIds(ids);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllProducts() {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+                generator.setRootValueSeparator(null);
+                productService.streamAllProducts(product -> {
+                    try {
+                        generator.writeObject(product);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<ProductDto> getProduct(@PathVariable Long id) {
+    public ResponseEntity<ProductDto> getProduct(@PathVariable Long id, WebRequest request) {
+        // Revalidation d'un client : seule la version est lue
+        if (isConditional(request)) {
+            Optional<ProductVersion> version = productService.getProductVersion(id);
+            if (version.isPresent() && request.checkNotModified(version.get().etag(), lastModified(version.get()))) {
+                return null;
+            }
+        }
         return productService.getProductById(id)
-                .map(ResponseEntity::ok)
+                .map(product -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(ProductVersion.of(product).etag());
+                    if (product.getUpdatedAt() != null) {
+                        response.lastModified(product.getUpdatedAt());
+                    }
+                    return response.body(product);
+                })
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -32,6 +149,16 @@ public class ProductController {
         return productService.createProduct(product);
     }
 
+    @PostMapping("/batch")
+    public List<BatchItemResult> createProducts(@RequestBody List<ProductDto> products) {
+        return productService.createProducts(products);
+    }
+
+    @PatchMapping("/batch")
+    public List<BatchItemResult> updateProducts(@RequestBody List<ProductDto> products) {
+        return productService.updateProducts(products);
+    }
+
     @PatchMapping("/{id}")
     public ProductDto updateProduct(@PathVariable Long id, @RequestBody ProductDto product) {
         return productService.updateProduct(id, product);
@@ -42,4 +169,32 @@ public class ProductController {
         productService.deleteProduct(id);
     }
 
+    private static boolean isConditional(WebRequest request) {
+        return request.getHeader(HttpHeaders.IF_NONE_MATCH) != null || request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null;
+    }
+
+    private static long lastModified(ProductVersion version) {
+        return version.updatedAt() == null ? -1 : version.updatedAt().toEpochMilli();
+    }
+
+    // ETag faible : dérivé des versions de la page et du curseur, pas des octets du corps
+    private static String pageEtag(ProductPage page) {
+        StringBuilder validators = new StringBuilder();
+        page.getItems().forEach(product -> validators.append(product.getId()).append(':').append(product.getVersion()).append(';'));
+        validators.append(page.getNextCursor());
+        return "W/\"" + DigestUtils.md5DigestAsHex(validators.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    // Paramètres invalides (tri, curseur, produit incomplet) : erreur du client, pas du serveur
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidArgument(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    // Mode IN_MEMORY : le stock ne peut changer que sur l'instance qui consomme les commandes
+    @ExceptionHandler(StockNotOwnedException.class)
+    public ResponseEntity<String> handleStockNotOwned(StockNotOwnedException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
 }
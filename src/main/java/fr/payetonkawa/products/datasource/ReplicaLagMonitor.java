@@ -0,0 +1,124 @@
+package fr.payetonkawa.products.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+// Retard du réplica mesuré par battement : à chaque mesure, l'instance écrit l'heure sur le primaire dans sa propre
+// ligne de replica_heartbeat, puis relit au tour suivant celle que le réplica a rejouée. Une ligne par instance :
+// la mesure ne dépend que de l'horloge locale, et le primaire écrit même sans activité. Le retard est surestimé
+// d'au plus une période de mesure, jamais sous-estimé. Fonctionne aussi sur H2, contrairement à
+// pg_last_xact_replay_timestamp().
+@Slf4j
+public class ReplicaLagMonitor implements MeterBinder {
+
+    private static final String READ_BEAT_SQL = "select beat_at from replica_heartbeat where instance_id = ?";
+    private static final String UPDATE_BEAT_SQL = "update replica_heartbeat set beat_at = ? where instance_id = ?";
+    private static final String INSERT_BEAT_SQL = "insert into replica_heartbeat (instance_id, beat_at) values (?, ?)";
+    // Lignes laissées par des instances arrêtées
+    private static final String PURGE_BEATS_SQL = "delete from replica_heartbeat where beat_at < ?";
+    private static final Duration STALE_BEAT = Duration.ofDays(1);
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private final TaskScheduler taskScheduler;
+    private final Duration maxLag;
+    private final Duration checkInterval;
+    private final String instanceId = UUID.randomUUID().toString();
+    // Dernier battement écrit sur le primaire
+    private Instant lastBeat;
+    // null : réplica injoignable ou pas encore mesuré
+    private volatile Duration lag;
+    private boolean failing;
+
+    public ReplicaLagMonitor(DataSource primary, DataSource replica, TaskScheduler taskScheduler,
+                             Duration maxLag, Duration checkInterval) {
+        this.primary = new JdbcTemplate(primary);
+        this.replica = new JdbcTemplate(replica);
+        this.taskScheduler = taskScheduler;
+        this.maxLag = maxLag;
+        this.checkInterval = checkInterval;
+    }
+
+    public boolean isReplicaUsable() {
+        Duration current = lag;
+        return current != null && current.compareTo(maxLag) <= 0;
+    }
+
+    @Scheduled(fixedDelayString = "${products.replica.lag-check-interval:1s}")
+    public void check() {
+        boolean wasUsable = isReplicaUsable();
+        try {
+            lag = measure();
+            beat();
+        } catch (DataAccessException e) {
+            if (lag != null || !failing) {
+                log.warn("⚠️ Could not measure replica lag, reads go to the primary: {}", e.getMessage());
+            }
+            lag = null;
+            failing = true;
+            return;
+        }
+        failing = false;
+        if (wasUsable && !isReplicaUsable()) {
+            log.warn("🐢 Replica lag is {}, reads go to the primary", lag == null ? "unknown" : lag);
+        } else if (!wasUsable && isReplicaUsable()) {
+            log.info("✅ Replica lag is {}, reads go back to the replica", lag);
+        }
+    }
+
+    // null tant que le premier battement n'a pas atteint le réplica
+    private Duration measure() {
+        List<Timestamp> seen = replica.queryForList(READ_BEAT_SQL, Timestamp.class, instanceId);
+        if (seen.isEmpty() || lastBeat == null) {
+            return null;
+        }
+        Instant replayed = seen.getFirst().toInstant();
+        if (!replayed.isBefore(lastBeat)) {
+            return Duration.ZERO;
+        }
+        // Le battement suivant, écrit après celui-ci, n'est pas encore rejoué
+        Duration measured = Duration.between(replayed, Instant.now());
+        return measured.isNegative() ? Duration.ZERO : measured;
+    }
+
+    private void beat() {
+        // Tronqué à la précision de la colonne pour pouvoir comparer avec la valeur relue
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        if (primary.update(UPDATE_BEAT_SQL, Timestamp.from(now), instanceId) == 0) {
+            primary.update(PURGE_BEATS_SQL, Timestamp.from(now.minus(STALE_BEAT)));
+            primary.update(INSERT_BEAT_SQL, instanceId, Timestamp.from(now));
+        }
+        lastBeat = now;
+    }
+
+    // Une lecture faite sur le réplica juste avant une modification peut remettre l'ancienne valeur en cache :
+    // l'action est rejouée quand le réplica ne peut plus être en retard sur cette modification
+    public void afterReplicaCatchUp(Runnable action) {
+        taskScheduler.schedule(action, Instant.now().plus(maxLag).plus(checkInterval));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("products.replica.lag", this, monitor -> {
+                    Duration current = monitor.lag;
+                    return current == null ? Double.NaN : current.toNanos() / 1e9;
+                })
+                .description("Âge du plus ancien battement du primaire pas encore visible sur le réplica")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+}
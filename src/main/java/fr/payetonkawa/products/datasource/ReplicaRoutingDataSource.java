@@ -0,0 +1,35 @@
+package fr.payetonkawa.products.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+// Transactions readOnly sur le réplica tant qu'il est à jour, tout le reste (réservations comprises) sur le primaire.
+// À placer derrière un LazyConnectionDataSourceProxy : le gestionnaire de transactions ouvre la connexion avant
+// de publier le caractère readOnly, la cible ne doit être choisie qu'à la première requête.
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Target {
+        PRIMARY,
+        REPLICA
+    }
+
+    private final BooleanSupplier replicaUsable;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, BooleanSupplier replicaUsable) {
+        this.replicaUsable = replicaUsable;
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() && replicaUsable.getAsBoolean()
+                ? Target.REPLICA
+                : Target.PRIMARY;
+    }
+}
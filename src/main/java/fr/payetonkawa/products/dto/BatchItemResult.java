@@ -0,0 +1,24 @@
+package fr.payetonkawa.products.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class BatchItemResult {
+
+    private final int index;
+    private final Long id;
+    private final boolean success;
+    private final String error;
+    private final ProductDto product;
+
+    public static BatchItemResult succeeded(int index, ProductDto product) {
+        return new BatchItemResult(index, product.getId(), true, null, product);
+    }
+
+    public static BatchItemResult failed(int index, Long id, String error) {
+        return new BatchItemResult(index, id, false, error, null);
+    }
+
+}
@@ -0,0 +1,28 @@
+package fr.payetonkawa.products.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import fr.payetonkawa.products.entity.Product;
+import fr.payetonkawa.products.entity.ProductTombstone;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductChange {
+
+    private final long changeSeq;
+    private final Long id;
+    private final boolean deleted;
+    // Absent pour une suppression
+    private final ProductDto product;
+
+    public static ProductChange of(Product product) {
+        return new ProductChange(product.getChangeSeq(), product.getId(), false, ProductDto.fromEntity(product));
+    }
+
+    public static ProductChange of(ProductTombstone tombstone) {
+        return new ProductChange(tombstone.getChangeSeq(), tombstone.getProductId(), true, null);
+    }
+
+}
@@ -0,0 +1,16 @@
+package fr.payetonkawa.products.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class ProductChangePage {
+
+    private final List<ProductChange> changes;
+    // Toujours renseigné : à renvoyer tel quel dans since, même quand la page est vide
+    private final long cursor;
+
+}
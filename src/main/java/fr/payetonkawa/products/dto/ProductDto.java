@@ -1,11 +1,13 @@
 package fr.payetonkawa.products.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import fr.payetonkawa.products.entity.Product;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Builder;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
 import java.util.List;
 
 @Data
@@ -16,10 +18,17 @@ public class ProductDto {
 
     private Long id;
     private String name;
-    private double price;
+    // null : champ absent de la requête, la valeur existante est conservée
+    private Double price;
     private String description;
     private String color;
-    private int stock;
+    private Integer stock;
+
+    // Validateurs HTTP (ETag, Last-Modified) : jamais sérialisés dans le corps
+    @JsonIgnore
+    private long version;
+    @JsonIgnore
+    private Instant updatedAt;
 
     public static ProductDto fromEntity(Product product) {
         ProductDto dto = new ProductDto();
@@ -29,6 +38,8 @@ public class ProductDto {
         dto.setDescription(product.getDescription());
         dto.setColor(product.getColor());
         dto.setStock(product.getStock());
+        dto.setVersion(product.getVersion());
+        dto.setUpdatedAt(product.getUpdatedAt());
         return dto;
     }
 
@@ -0,0 +1,19 @@
+package fr.payetonkawa.products.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class ProductPage {
+
+    private final List<ProductDto> items;
+    private final Long nextCursor;
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+}
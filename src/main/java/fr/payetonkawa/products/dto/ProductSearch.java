@@ -0,0 +1,80 @@
+package fr.payetonkawa.products.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+@Getter
+@Builder
+public class ProductSearch {
+
+    private final String text;
+    private final String color;
+    private final Double minPrice;
+    private final Double maxPrice;
+    @Builder.Default
+    private final Sort sort = Sort.ID;
+    private final Cursor after;
+    private final int limit;
+
+    public enum Sort {
+        ID("id"),
+        PRICE("price"),
+        PRICE_DESC("-price"),
+        NAME("name");
+
+        private final String param;
+
+        Sort(String param) {
+            this.param = param;
+        }
+
+        public static Sort parse(String param) {
+            for (Sort sort : values()) {
+                if (sort.param.equals(param)) {
+                    return sort;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported sort: " + param);
+        }
+    }
+
+    // Position après le dernier produit d'une page : valeur de tri + id pour départager les égalités
+    public record Cursor(String value, long id) {
+
+        public static Cursor of(Sort sort, ProductDto last) {
+            return switch (sort) {
+                case ID -> new Cursor(null, last.getId());
+                case PRICE, PRICE_DESC -> new Cursor(Double.toString(last.getPrice()), last.getId());
+                case NAME -> new Cursor(last.getName(), last.getId());
+            };
+        }
+
+        // Opaque pour le client : "valeur|id" en base64url
+        public String encode() {
+            String raw = (value == null ? "" : value) + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public static Cursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new Cursor(raw.substring(0, separator), Long.parseLong(raw.substring(separator + 1)));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid search cursor: " + token, e);
+            }
+        }
+
+        public double priceValue() {
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException | NullPointerException e) {
+                throw new IllegalArgumentException("Search cursor does not match a price sort", e);
+            }
+        }
+    }
+
+}
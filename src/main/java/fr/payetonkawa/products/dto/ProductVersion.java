@@ -0,0 +1,16 @@
+package fr.payetonkawa.products.dto;
+
+import java.time.Instant;
+
+public record ProductVersion(Long id, long version, Instant updatedAt) {
+
+    public static ProductVersion of(ProductDto product) {
+        return new ProductVersion(product.getId(), product.getVersion(), product.getUpdatedAt());
+    }
+
+    // ETag fort : id et version identifient exactement le contenu servi
+    public String etag() {
+        return "\"" + id + "-" + version + "\"";
+    }
+
+}
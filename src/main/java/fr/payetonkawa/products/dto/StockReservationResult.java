@@ -0,0 +1,23 @@
+package fr.payetonkawa.products.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class StockReservationResult {
+
+    private final boolean confirmed;
+    private final List<Long> failedItemIds;
+
+    public static StockReservationResult confirmed() {
+        return new StockReservationResult(true, List.of());
+    }
+
+    public static StockReservationResult rejected(List<Long> failedItemIds) {
+        return new StockReservationResult(false, List.copyOf(failedItemIds));
+    }
+
+}
@@ -0,0 +1,49 @@
+package fr.payetonkawa.products.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "outbox_dead_letter")
+@Getter
+@Setter
+@NoArgsConstructor
+public class OutboxDeadLetter {
+
+    // Même id que la ligne d'origine : le messageId product-outbox-<id> reste le même au rejeu
+    @Id
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "routing_key", nullable = false)
+    private String routingKey;
+
+    @Column(name = "body", nullable = false, length = 1_000_000)
+    private byte[] body;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "parked_at", nullable = false)
+    private Instant parkedAt;
+
+    @Column(name = "last_error", length = 1_000)
+    private String lastError;
+
+    public OutboxDeadLetter(OutboxEvent outboxEvent, Instant parkedAt, String lastError) {
+        this.id = outboxEvent.getId();
+        this.routingKey = outboxEvent.getRoutingKey();
+        this.body = outboxEvent.getBody();
+        this.createdAt = outboxEvent.getCreatedAt();
+        this.attempts = outboxEvent.getAttempts();
+        this.parkedAt = parkedAt;
+        this.lastError = lastError;
+    }
+}
@@ -0,0 +1,38 @@
+package fr.payetonkawa.products.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "outbox_event")
+@Getter
+@Setter
+public class OutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_event_seq")
+    @SequenceGenerator(name = "outbox_event_seq", sequenceName = "outbox_event_seq", allocationSize = 50)
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "routing_key", nullable = false)
+    private String routingKey;
+
+    // Message déjà sérialisé : le relais n'a plus qu'à l'envoyer (bytea sous PostgreSQL)
+    @Column(name = "body", nullable = false, length = 1_000_000)
+    private byte[] body;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    // Null tant que l'envoi n'a jamais échoué
+    @Column(name = "next_attempt_at")
+    private Instant nextAttemptAt;
+
+}
@@ -0,0 +1,40 @@
+package fr.payetonkawa.products.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "processed_event", indexes = @Index(name = "idx_processed_event_processed_at", columnList = "processed_at"))
+@Getter
+@Setter
+@NoArgsConstructor
+public class ProcessedEvent implements Persistable<String> {
+
+    @Id
+    @Column(name = "event_key", nullable = false)
+    private String eventKey;
+
+    @Column(name = "processed_at", nullable = false)
+    private Instant processedAt;
+
+    public ProcessedEvent(String eventKey, Instant processedAt) {
+        this.eventKey = eventKey;
+        this.processedAt = processedAt;
+    }
+
+    @Override
+    public String getId() {
+        return eventKey;
+    }
+
+    // Toujours un INSERT : un doublon concurrent échoue sur la clé primaire au lieu d'être fusionné
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
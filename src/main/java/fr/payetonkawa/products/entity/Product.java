@@ -3,6 +3,10 @@ package fr.payetonkawa.products.entity;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
 
 @Entity
 @Table(name = "product")
@@ -11,7 +15,8 @@ import lombok.Setter;
 public class Product {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+    @SequenceGenerator(name = "product_seq", sequenceName = "product_seq", allocationSize = 50)
     @Column(name = "id")
     private Long id;
 
@@ -30,4 +35,18 @@ public class Product {
     @Column(name="stock", nullable = false, updatable = true)
     private int stock;
 
+    @Version
+    @ColumnDefault("0")
+    @Column(name="version", nullable = false)
+    private long version;
+
+    // Last-Modified des lectures HTTP ; les UPDATE groupés du stock le mettent à jour eux-mêmes
+    @UpdateTimestamp
+    @Column(name="updated_at", nullable = false)
+    private Instant updatedAt;
+
+    // Position dans GET /v1/changes : attribuée par la base (insert) puis par ProductChangeFeed avant chaque commit
+    @Column(name="change_seq", insertable = false, updatable = false)
+    private Long changeSeq;
+
 }
@@ -0,0 +1,38 @@
+package fr.payetonkawa.products.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "stock_journal", indexes = @Index(name = "idx_stock_journal_product_id", columnList = "product_id"))
+@Getter
+@Setter
+@NoArgsConstructor
+public class StockJournalEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_journal_seq")
+    @SequenceGenerator(name = "stock_journal_seq", sequenceName = "stock_journal_seq", allocationSize = 50)
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    // Négatif pour une réservation, positif pour une restitution
+    @Column(name = "delta", nullable = false)
+    private int delta;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    public StockJournalEntry(Long productId, int delta, Instant createdAt) {
+        this.productId = productId;
+        this.delta = delta;
+        this.createdAt = createdAt;
+    }
+}
@@ -1,149 +1,353 @@
 package fr.payetonkawa.products.event;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.payetonkawa.products.dto.StockReservationResult;
 import fr.payetonkawa.products.messaging.ExchangeMessage;
 import fr.payetonkawa.products.messaging.ExchangeQueues;
-import fr.payetonkawa.products.repository.ProductRepository;
+import fr.payetonkawa.products.messaging.OrderEvent;
+import fr.payetonkawa.products.messaging.OrderEventDecoder;
+import fr.payetonkawa.products.messaging.OrderLine;
 import fr.payetonkawa.products.service.ProductService;
+import fr.payetonkawa.products.service.StockReservationService;
+import fr.payetonkawa.products.util.LongIntMap;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
+import static fr.payetonkawa.products.logging.SamplingTurboFilter.SAMPLED;
+
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class EventListener {
 
+    private static final String BATCH_ROUTING_KEY = "batch";
+
     private final ProductService productService;
-    private final ProductRepository productRepository;
     private final EventPublisher eventPublisher;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OrderedEventDispatcher eventDispatcher;
+    private final TransactionOperations transactionOperations;
+    private final ProcessedEventLedger processedEventLedger;
+    private final EventMetrics eventMetrics;
+    private final StockReservationService stockReservationService;
+
+    @RabbitListener(queues = ExchangeQueues.PRODUCT_QUEUE_NAME, containerFactory = "orderEventsContainerFactory")
+    public void receive(Message amqpMessage, Channel channel) throws Exception {
+        if (!eventDispatcher.isEnabled()) {
+            handleEvent(amqpMessage);
+            return;
+        }
 
-    @RabbitListener(queues = ExchangeQueues.PRODUCT_QUEUE_NAME)
-    public void handleEvent(String message, Message amqpMessage) throws Exception {
         String routingKey = amqpMessage.getMessageProperties().getReceivedRoutingKey();
-        log.info("📩 Received event with routing key: {}", routingKey);
-
-        JsonNode root = objectMapper.readTree(message);
-        JsonNode payloadNode = root.get("payload");
-        Long orderId = payloadNode.get("orderId").asLong();
-
-        switch (routingKey) {
-            case "order.created" -> {
-                List<Map<String, Object>> items = objectMapper.convertValue(
-                        payloadNode.get("items"), new TypeReference<>() {}
-                );
-                handleOrderCreated(orderId, items);
-            }
-            case "order.deleted" -> {
-                List<Map<String, Object>> items = objectMapper.convertValue(
-                        payloadNode.get("items"), new TypeReference<>() {}
-                );
-                handleOrderDeleted(orderId, items);
+        long deliveryTag = amqpMessage.getMessageProperties().getDeliveryTag();
+        log.debug("📩 Received event with routing key: {}", routingKey);
+
+        if (!OrderEventDecoder.supports(routingKey)) {
+            log.warn("⚠️ Unhandled routing key: {}", routingKey);
+            eventMetrics.recordUnhandled();
+            channel.basicAck(deliveryTag, false);
+            return;
+        }
+        eventMetrics.recordLag(routingKey, amqpMessage.getMessageProperties().getTimestamp());
+        OrderEvent event;
+        String eventKey;
+        try {
+            Timer.Sample decoding = eventMetrics.start();
+            event = OrderEventDecoder.decode(routingKey, amqpMessage.getBody());
+            eventKey = ProcessedEventLedger.keyOf(routingKey, event, amqpMessage.getMessageProperties().getMessageId());
+            eventMetrics.stop(decoding, routingKey, EventMetrics.STAGE_DECODE);
+        } catch (IOException | RuntimeException e) {
+            // Le même corps échouerait à chaque livraison : rejeté sans remise en file, jamais en boucle
+            recordRejected(amqpMessage, routingKey, e);
+            channel.basicReject(deliveryTag, false);
+            return;
+        }
+
+        // Temps passé derrière les événements précédents de la même commande ou des mêmes produits
+        Timer.Sample queued = eventMetrics.start();
+        eventDispatcher.dispatch(event.orderId(), event.productIds(), () -> {
+                    eventMetrics.stop(queued, routingKey, EventMetrics.STAGE_QUEUED);
+                    process(routingKey, event, eventKey);
+                })
+                .whenComplete((result, error) -> acknowledge(channel, deliveryTag, routingKey, error));
+    }
+
+    // Mode lot : un seul commit pour tous les messages décodables, puis un acquittement par message
+    @RabbitListener(queues = ExchangeQueues.PRODUCT_QUEUE_NAME, containerFactory = "orderEventsBatchContainerFactory")
+    public void receiveBatch(List<Message> amqpMessages, Channel channel) {
+        List<DecodedEvent> events = new ArrayList<>(amqpMessages.size());
+        List<Long> acked = new ArrayList<>();
+        List<Long> nacked = new ArrayList<>();
+        List<Long> rejected = new ArrayList<>();
+        for (Message amqpMessage : amqpMessages) {
+            String routingKey = amqpMessage.getMessageProperties().getReceivedRoutingKey();
+            long deliveryTag = amqpMessage.getMessageProperties().getDeliveryTag();
+            if (!OrderEventDecoder.supports(routingKey)) {
+                log.warn("⚠️ Unhandled routing key: {}", routingKey);
+                eventMetrics.recordUnhandled();
+                acked.add(deliveryTag);
+                continue;
             }
-            case "order.cancelled" -> {
-                List<Map<String, Object>> items = objectMapper.convertValue(
-                        payloadNode.get("items"), new TypeReference<>() {}
-                );
-                handleOrderCancelled(orderId, items);
+            eventMetrics.recordLag(routingKey, amqpMessage.getMessageProperties().getTimestamp());
+            try {
+                Timer.Sample decoding = eventMetrics.start();
+                OrderEvent event = OrderEventDecoder.decode(routingKey, amqpMessage.getBody());
+                events.add(new DecodedEvent(deliveryTag, routingKey, event,
+                        ProcessedEventLedger.keyOf(routingKey, event, amqpMessage.getMessageProperties().getMessageId())));
+                eventMetrics.stop(decoding, routingKey, EventMetrics.STAGE_DECODE);
+            } catch (IOException | RuntimeException e) {
+                recordRejected(amqpMessage, routingKey, e);
+                rejected.add(deliveryTag);
             }
-            case "order.updated" -> {
-                List<Map<String, Object>> oldItems = objectMapper.convertValue(
-                        payloadNode.get("previousItems"), new TypeReference<>() {}
-                );
-                List<Map<String, Object>> newItems = objectMapper.convertValue(
-                        payloadNode.get("items"), new TypeReference<>() {}
-                );
-                handleOrderUpdated(orderId, oldItems, newItems);
+        }
+
+        try {
+            Timer.Sample transaction = eventMetrics.start();
+            transactionOperations.executeWithoutResult(status -> applyBatch(events));
+            eventMetrics.stop(transaction, BATCH_ROUTING_KEY, EventMetrics.STAGE_TRANSACTION);
+            eventMetrics.recordBatch(events.size());
+            events.forEach(event -> acked.add(event.deliveryTag()));
+        } catch (RuntimeException e) {
+            // Le lot est annulé en entier : on rejoue message par message pour n'écarter que le fautif
+            log.warn("⚠️ Batch of {} events failed, retrying one by one: {}", events.size(), e.getMessage());
+            for (DecodedEvent event : events) {
+                try {
+                    process(event.routingKey(), event.event(), event.eventKey());
+                    acked.add(event.deliveryTag());
+                } catch (RuntimeException failure) {
+                    log.error("❌ Failed to handle '{}', message will be redelivered", event.routingKey(), failure);
+                    nacked.add(event.deliveryTag());
+                }
             }
-            default -> log.warn("⚠️ Unhandled routing key: {}", routingKey);
         }
+
+        acknowledge(channel, acked, nacked, rejected);
     }
 
-    private void handleOrderCreated(Long orderId, List<Map<String, Object>> items) {
-        log.info("🛒 Handling 'order.created' for orderId={}", orderId);
+    public void handleEvent(Message amqpMessage) throws Exception {
+        String routingKey = amqpMessage.getMessageProperties().getReceivedRoutingKey();
+        log.debug("📩 Received event with routing key: {}", routingKey);
 
-        boolean stockOk = productService.verifyAndUpdateStock(items);
+        if (!OrderEventDecoder.supports(routingKey)) {
+            log.warn("⚠️ Unhandled routing key: {}", routingKey);
+            eventMetrics.recordUnhandled();
+            return;
+        }
+        eventMetrics.recordLag(routingKey, amqpMessage.getMessageProperties().getTimestamp());
+        Timer.Sample decoding = eventMetrics.start();
+        OrderEvent event;
+        String eventKey;
+        try {
+            event = OrderEventDecoder.decode(routingKey, amqpMessage.getBody());
+            eventKey = ProcessedEventLedger.keyOf(routingKey, event, amqpMessage.getMessageProperties().getMessageId());
+        } catch (IOException | RuntimeException e) {
+            // Acquittement automatique : le conteneur rejette sans remettre en file
+            recordRejected(amqpMessage, routingKey, e);
+            throw new AmqpRejectAndDontRequeueException("Could not decode '" + routingKey + "'", e);
+        }
+        eventMetrics.stop(decoding, routingKey, EventMetrics.STAGE_DECODE);
+        process(routingKey, event, eventKey);
+    }
 
-        String routingKey = stockOk ? "product.stock.confirmed" : "product.stock.insufficient";
+    // Stock et outbox dans la même transaction : l'événement sortant existe si et seulement si le stock a changé
+    private void process(String routingKey, OrderEvent event, String eventKey) {
+        Timer.Sample transaction = eventMetrics.start();
+        transactionOperations.executeWithoutResult(status -> apply(routingKey, event, eventKey));
+        // Commit compris : c'est là que se paie l'attente des verrous et du WAL
+        eventMetrics.stop(transaction, routingKey, EventMetrics.STAGE_TRANSACTION);
+    }
 
-        log.info("📤 Sending event: {} for orderId={}", routingKey, orderId);
+    private void apply(String routingKey, OrderEvent event, String eventKey) {
+        if (!markProcessed(routingKey, eventKey)) {
+            return;
+        }
+        switch (event) {
+            case OrderEvent.Created created -> handleOrderCreated(created.orderId(), created.items());
+            case OrderEvent.Deleted deleted -> handleOrderDeleted(deleted.orderId(), deleted.items());
+            case OrderEvent.Cancelled cancelled -> handleOrderCancelled(cancelled.orderId(), cancelled.items());
+            case OrderEvent.Completed completed -> handleOrderCompleted(completed.orderId());
+            case OrderEvent.Updated updated ->
+                    handleOrderUpdated(updated.orderId(), updated.previousItems(), updated.items());
+        }
+    }
 
-        eventPublisher.sendEvent(routingKey, ExchangeMessage.builder()
-                .payload(Map.of("orderId", orderId))
-                .build());
+    // Une redélivrance ne doit pas réappliquer le stock
+    private boolean markProcessed(String routingKey, String eventKey) {
+        if (processedEventLedger.markProcessed(eventKey)) {
+            return true;
+        }
+        log.info("♻️ Skipping already processed event {}", eventKey);
+        eventMetrics.recordDuplicate(routingKey);
+        return false;
     }
 
-    private void handleOrderDeleted(Long orderId, List<Map<String, Object>> items) {
-        log.info("❌ Handling 'order.deleted' for orderId={}", orderId);
+    // Les créations consécutives sont réservées ensemble ; les autres événements gardent leur place dans le lot
+    private void applyBatch(List<DecodedEvent> events) {
+        List<OrderEvent.Created> creations = new ArrayList<>();
+        for (DecodedEvent event : events) {
+            if (event.event() instanceof OrderEvent.Created created) {
+                if (markProcessed(event.routingKey(), event.eventKey())) {
+                    creations.add(created);
+                }
+                continue;
+            }
+            reserveOrders(creations);
+            creations.clear();
+            apply(event.routingKey(), event.event(), event.eventKey());
+        }
+        reserveOrders(creations);
+    }
 
-        for (Map<String, Object> item : items) {
-            Long productId = Long.valueOf(item.get("itemId").toString());
-            int quantity = (int) item.get("quantity");
-            productService.restoreStock(productId, quantity);
+    private void reserveOrders(List<OrderEvent.Created> creations) {
+        if (creations.isEmpty()) {
+            return;
+        }
+        List<StockReservationResult> results = productService.verifyAndUpdateStockBatch(
+                creations.stream().map(OrderEvent.Created::items).toList());
+        for (int i = 0; i < creations.size(); i++) {
+            OrderEvent.Created created = creations.get(i);
+            confirmReservation(created.orderId(), created.items(), results.get(i));
         }
+    }
 
-        log.info("✅ Stock restored for orderId={}", orderId);
+    private void acknowledge(Channel channel, List<Long> acked, List<Long> nacked, List<Long> rejected) {
+        try {
+            if (nacked.isEmpty() && rejected.isEmpty() && !acked.isEmpty()) {
+                // Tout le lot est traité : une seule trame pour l'acquitter
+                channel.basicAck(Collections.max(acked), true);
+                return;
+            }
+            for (long deliveryTag : acked) {
+                channel.basicAck(deliveryTag, false);
+            }
+            // Échec du traitement : peut réussir plus tard, le message revient en file
+            for (long deliveryTag : nacked) {
+                channel.basicNack(deliveryTag, false, true);
+            }
+            for (long deliveryTag : rejected) {
+                channel.basicReject(deliveryTag, false);
+            }
+        } catch (IOException e) {
+            log.error("❌ Could not acknowledge deliveries {} / {} / {}", acked, nacked, rejected, e);
+        }
+    }
+
+    // Sans file de lettres mortes, ce log est la seule trace du message écarté
+    private void recordRejected(Message amqpMessage, String routingKey, Exception e) {
+        eventMetrics.recordRejected(routingKey);
+        log.error("❌ Could not decode '{}', message is dropped: {}", routingKey,
+                new String(amqpMessage.getBody(), StandardCharsets.UTF_8), e);
+    }
+
+    private void acknowledge(Channel channel, long deliveryTag, String routingKey, Throwable error) {
+        try {
+            if (error == null) {
+                channel.basicAck(deliveryTag, false);
+            } else {
+                log.error("❌ Failed to handle '{}', message will be redelivered", routingKey, error);
+                channel.basicNack(deliveryTag, false, true);
+            }
+        } catch (IOException e) {
+            log.error("❌ Could not acknowledge delivery {}", deliveryTag, e);
+        }
     }
 
-    private void handleOrderUpdated(Long orderId, List<Map<String, Object>> previousItems, List<Map<String, Object>> newItems) {
-        log.info("🔁 Handling 'order.updated' for orderId={}", orderId);
+    private void handleOrderCreated(long orderId, List<OrderLine> items) {
+        log.debug("🛒 Handling 'order.created' for orderId={}", orderId);
+
+        confirmReservation(orderId, items, productService.verifyAndUpdateStock(items));
+    }
 
-        Map<Long, Integer> adjustments = new HashMap<>();
+    private void confirmReservation(long orderId, List<OrderLine> items, StockReservationResult result) {
+        eventMetrics.recordReservation(result.isConfirmed());
 
-        for (Map<String, Object> item : previousItems) {
-            Long id = Long.valueOf(item.get("itemId").toString());
-            int qty = (int) item.get("quantity");
-            adjustments.put(id, adjustments.getOrDefault(id, 0) - qty);
+        if (result.isConfirmed() && stockReservationService.isEnabled()) {
+            stockReservationService.hold(orderId, items);
         }
 
-        for (Map<String, Object> item : newItems) {
-            Long id = Long.valueOf(item.get("itemId").toString());
-            int qty = (int) item.get("quantity");
-            adjustments.put(id, adjustments.getOrDefault(id, 0) + qty);
+        String routingKey = result.isConfirmed() ? "product.stock.confirmed" : "product.stock.insufficient";
+
+        log.info(SAMPLED, "📤 Sending event: {} for orderId={}", routingKey, orderId);
+
+        Map<String, Object> payload = result.isConfirmed()
+                ? Map.of("orderId", orderId)
+                : Map.of("orderId", orderId, "failedItemIds", result.getFailedItemIds());
+        eventPublisher.enqueue(routingKey, ExchangeMessage.builder()
+                .payload(payload)
+                .build());
+    }
+
+    private void handleOrderDeleted(long orderId, List<OrderLine> items) {
+        log.debug("❌ Handling 'order.deleted' for orderId={}", orderId);
+
+        restoreOrderStock(orderId, items);
+
+        log.info(SAMPLED, "✅ Stock restored for deleted orderId={}", orderId);
+    }
+
+    private void handleOrderUpdated(long orderId, List<OrderLine> previousItems, List<OrderLine> newItems) {
+        log.debug("🔁 Handling 'order.updated' for orderId={}", orderId);
+
+        // Ce que la commande détient encore, et non previousItems : rien si la réservation a expiré
+        LongIntMap held = stockReservationService.isEnabled()
+                ? stockReservationService.held(orderId)
+                : OrderLine.quantities(previousItems);
+        LongIntMap adjustments = new LongIntMap(held.size() + newItems.size());
+        held.forEach((productId, quantity) -> adjustments.add(productId, -quantity));
+        for (OrderLine item : newItems) {
+            adjustments.add(item.itemId(), item.quantity());
         }
 
-        // Vérifie que tous les ajouts sont faisables
-        for (Map.Entry<Long, Integer> entry : adjustments.entrySet()) {
-            if (entry.getValue() > 0) {
-                var product = productRepository.findById(entry.getKey()).orElse(null);
-                if (product == null || product.getStock() < entry.getValue()) {
-                    eventPublisher.sendEvent("product.stock.insufficient", ExchangeMessage.builder()
-                            .payload(Map.of("orderId", orderId))
-                            .build());
-                    return;
-                }
-            }
+        StockReservationResult result = productService.adjustStock(adjustments);
+        if (!result.isConfirmed()) {
+            eventPublisher.enqueue("product.stock.insufficient", ExchangeMessage.builder()
+                    .payload(Map.of("orderId", orderId))
+                    .build());
+            return;
         }
 
-        // Applique les ajustements
-        for (Map.Entry<Long, Integer> entry : adjustments.entrySet()) {
-            var product = productRepository.findById(entry.getKey()).orElse(null);
-            if (product == null) continue;
-            product.setStock(product.getStock() - entry.getValue()); // négatif = +stock
-            productRepository.save(product);
+        if (stockReservationService.isEnabled()) {
+            stockReservationService.replace(orderId, newItems);
         }
 
-        log.info("✅ Stock adjusted for order.updated, orderId={}", orderId);
-        eventPublisher.sendEvent("product.stock.confirmed", ExchangeMessage.builder()
+        log.info(SAMPLED, "✅ Stock adjusted for order.updated, orderId={}", orderId);
+        eventPublisher.enqueue("product.stock.confirmed", ExchangeMessage.builder()
                 .payload(Map.of("orderId", orderId))
                 .build());
     }
 
-    private void handleOrderCancelled(Long orderId, List<Map<String, Object>> items) {
-        log.info("🚫 Handling 'order.cancelled' for orderId={}", orderId);
-        for (Map<String, Object> item : items) {
-            Long productId = Long.valueOf(item.get("itemId").toString());
-            int quantity = (int) item.get("quantity");
-            productService.restoreStock(productId, quantity);
+    private void handleOrderCancelled(long orderId, List<OrderLine> items) {
+        log.debug("🚫 Handling 'order.cancelled' for orderId={}", orderId);
+        restoreOrderStock(orderId, items);
+        log.info(SAMPLED, "✅ Stock restored for cancelled orderId={}", orderId);
+    }
+
+    private void handleOrderCompleted(long orderId) {
+        log.info(SAMPLED, "💳 Handling 'order.completed' for orderId={}", orderId);
+        if (stockReservationService.isEnabled()) {
+            stockReservationService.release(orderId);
         }
-        log.info("✅ Stock restored for orderId={}", orderId);
     }
-}
 
+    private void restoreOrderStock(long orderId, List<OrderLine> items) {
+        if (stockReservationService.isEnabled()) {
+            // Seul le stock encore réservé revient : une réservation expirée a déjà été rendue
+            stockReservationService.release(orderId).forEach(productService::restoreStock);
+            return;
+        }
+        // Une ligne répétée n'est rendue qu'une fois, cumulée
+        OrderLine.quantities(items).forEach(productService::restoreStock);
+    }
+
+    private record DecodedEvent(long deliveryTag, String routingKey, OrderEvent event, String eventKey) {
+    }
+}
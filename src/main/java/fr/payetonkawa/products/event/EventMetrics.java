@@ -0,0 +1,112 @@
+package fr.payetonkawa.products.event;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Date;
+
+@Component
+public class EventMetrics {
+
+    public static final String STAGE_DECODE = "decode";
+    public static final String STAGE_QUEUED = "queued";
+    public static final String STAGE_TRANSACTION = "transaction";
+
+    private final MeterRegistry meterRegistry;
+    private final Counter reservationsConfirmed;
+    private final Counter reservationsInsufficient;
+    private final Timer outboxPublish;
+    private final Timer outboxLag;
+    private final DistributionSummary outboxBatchSize;
+    private final Counter outboxFailures;
+    private final Counter outboxParked;
+    private final DistributionSummary eventBatchSize;
+
+    public EventMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.reservationsConfirmed = Counter.builder("products.stock.reservations")
+                .tag("outcome", "confirmed")
+                .register(meterRegistry);
+        this.reservationsInsufficient = Counter.builder("products.stock.reservations")
+                .tag("outcome", "insufficient")
+                .register(meterRegistry);
+        this.outboxPublish = Timer.builder("products.outbox.publish")
+                .description("Publication d'un lot de l'outbox, confirmations comprises")
+                .register(meterRegistry);
+        this.outboxLag = Timer.builder("products.outbox.lag")
+                .description("Délai entre l'écriture dans l'outbox et la confirmation du broker")
+                .register(meterRegistry);
+        this.outboxBatchSize = DistributionSummary.builder("products.outbox.batch.size")
+                .register(meterRegistry);
+        this.outboxFailures = Counter.builder("products.outbox.failures")
+                .register(meterRegistry);
+        this.outboxParked = Counter.builder("products.outbox.parked")
+                .description("Lignes écartées dans outbox_dead_letter après trop d'échecs")
+                .register(meterRegistry);
+        this.eventBatchSize = DistributionSummary.builder("products.events.batch.size")
+                .description("Messages traités dans une même transaction en mode lot")
+                .register(meterRegistry);
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void stop(Timer.Sample sample, String routingKey, String stage) {
+        // Le registre garde les timers en cache, le builder ne recrée rien
+        sample.stop(Timer.builder("products.events.stage")
+                .tag("routing.key", routingKey)
+                .tag("stage", stage)
+                .register(meterRegistry));
+    }
+
+    // Horodatage posé par le producteur : absent si le service commandes ne le renseigne pas
+    public void recordLag(String routingKey, Date timestamp) {
+        if (timestamp == null) {
+            return;
+        }
+        Duration lag = Duration.ofMillis(Math.max(0, System.currentTimeMillis() - timestamp.getTime()));
+        Timer.builder("products.events.lag")
+                .tag("routing.key", routingKey)
+                .register(meterRegistry)
+                .record(lag);
+    }
+
+    public void recordDuplicate(String routingKey) {
+        meterRegistry.counter("products.events.duplicates", "routing.key", routingKey).increment();
+    }
+
+    public void recordUnhandled() {
+        meterRegistry.counter("products.events.unhandled").increment();
+    }
+
+    public void recordRejected(String routingKey) {
+        meterRegistry.counter("products.events.rejected", "routing.key", routingKey).increment();
+    }
+
+    public void recordReservation(boolean confirmed) {
+        (confirmed ? reservationsConfirmed : reservationsInsufficient).increment();
+    }
+
+    public void recordBatch(int size) {
+        eventBatchSize.record(size);
+    }
+
+    public void recordOutboxPublished(Timer.Sample sample, int batchSize, Duration oldestEventAge) {
+        sample.stop(outboxPublish);
+        outboxBatchSize.record(batchSize);
+        outboxLag.record(oldestEventAge);
+    }
+
+    public void recordOutboxFailure() {
+        outboxFailures.increment();
+    }
+
+    public void recordOutboxParked() {
+        outboxParked.increment();
+    }
+}
@@ -1,29 +1,83 @@
 package fr.payetonkawa.products.event;
 
-import com.google.gson.Gson;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import fr.payetonkawa.products.entity.OutboxEvent;
 import fr.payetonkawa.products.messaging.ExchangeMessage;
 import fr.payetonkawa.products.messaging.ExchangeQueues;
+import fr.payetonkawa.products.repository.OutboxEventRepository;
 import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 
 @Slf4j
 @Service
 public class EventPublisher {
 
     private final AmqpTemplate amqpTemplate;
-    private final Gson gson = new Gson();
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectWriter messageWriter;
 
-    public EventPublisher(AmqpTemplate amqpTemplate) {
+    public EventPublisher(AmqpTemplate amqpTemplate, ObjectMapper objectMapper, OutboxEventRepository outboxEventRepository) {
         this.amqpTemplate = amqpTemplate;
+        this.outboxEventRepository = outboxEventRepository;
+        // Les champs null sont omis, comme le faisait Gson : le format sur le fil ne change pas
+        this.messageWriter = objectMapper.copy()
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                .writerFor(ExchangeMessage.class);
     }
 
     public void sendEvent(String routingKey, ExchangeMessage message) {
+        byte[] body = serialize(routingKey, message);
+        amqpTemplate.send(ExchangeQueues.EXCHANGE_NAME, routingKey, toAmqpMessage(body));
+
+        if (log.isDebugEnabled()) {
+            log.debug("📤 Published to exchange '{}' routingKey '{}' payload '{}'",
+                    ExchangeQueues.EXCHANGE_NAME, routingKey, new String(body, StandardCharsets.UTF_8));
+        }
+    }
+
+    // Écrit dans la transaction de la modification de stock, publié ensuite par OutboxRelay
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(String routingKey, ExchangeMessage message) {
+        OutboxEvent outboxEvent = new OutboxEvent();
+        outboxEvent.setRoutingKey(routingKey);
+        outboxEvent.setBody(serialize(routingKey, message));
+        outboxEvent.setCreatedAt(Instant.now());
+        outboxEventRepository.save(outboxEvent);
+
+        if (log.isDebugEnabled()) {
+            log.debug("📥 Queued '{}' in outbox payload '{}'",
+                    routingKey, new String(outboxEvent.getBody(), StandardCharsets.UTF_8));
+        }
+    }
+
+    static Message toAmqpMessage(byte[] body) {
+        return MessageBuilder.withBody(body)
+                .setContentType(MessageProperties.CONTENT_TYPE_JSON)
+                .setContentEncoding(StandardCharsets.UTF_8.name())
+                .build();
+    }
+
+    private byte[] serialize(String routingKey, ExchangeMessage message) {
         message.setExchangeId(ExchangeQueues.EXCHANGE_NAME);
         message.setRoutingKey(routingKey);
         message.setType(routingKey);
-        amqpTemplate.convertAndSend(ExchangeQueues.EXCHANGE_NAME, routingKey, gson.toJson(message));
-        log.info("📤 Publishing to exchange '{}'routingKey '{} payload '{}'",
-                ExchangeQueues.EXCHANGE_NAME, routingKey, gson.toJson(message));
+        try {
+            return messageWriter.writeValueAsBytes(message);
+        } catch (JsonProcessingException e) {
+            throw new MessageConversionException("Failed to serialize event " + routingKey, e);
+        }
     }
 }
@@ -0,0 +1,116 @@
+package fr.payetonkawa.products.event;
+
+import fr.payetonkawa.products.config.ProductsProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Exécute les événements sur N workers : un événement attend uniquement les précédents
+// qui touchent la même commande ou l'un de ses produits, les autres avancent en parallèle.
+// Un événement en échec est retenté sur place, les suivants l'attendent. Une fois les tentatives
+// épuisées, son message est rejoué par RabbitMQ derrière eux : l'ordre n'est plus garanti pour ce produit.
+@Component
+@Slf4j
+public class OrderedEventDispatcher {
+
+    private final ExecutorService executor;
+    private final int attempts;
+    private final Duration retryBackoff;
+    private final Map<Long, CompletableFuture<Void>> productTails = new HashMap<>();
+    private final Map<Long, CompletableFuture<Void>> orderTails = new HashMap<>();
+
+    @Autowired
+    public OrderedEventDispatcher(ProductsProperties productsProperties) {
+        this(productsProperties.getEvents().getWorkers(),
+                productsProperties.getEvents().getAttempts(),
+                productsProperties.getEvents().getRetryBackoff());
+    }
+
+    public OrderedEventDispatcher(int workers, int attempts, Duration retryBackoff) {
+        this.executor = workers > 0
+                ? Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("order-worker-"))
+                : null;
+        this.attempts = Math.max(attempts, 1);
+        this.retryBackoff = retryBackoff;
+    }
+
+    public boolean isEnabled() {
+        return executor != null;
+    }
+
+    public synchronized CompletableFuture<Void> dispatch(long orderId, Collection<Long> productIds, Runnable task) {
+        List<CompletableFuture<Void>> predecessors = new ArrayList<>();
+        addIfPresent(predecessors, orderTails.get(orderId));
+        Collection<Long> distinctProductIds = new LinkedHashSet<>(productIds);
+        for (Long productId : distinctProductIds) {
+            addIfPresent(predecessors, productTails.get(productId));
+        }
+
+        // Un prédécesseur en échec après toutes ses tentatives ne bloque plus les suivants
+        CompletableFuture<Void> future = CompletableFuture
+                .allOf(predecessors.stream()
+                        .map(predecessor -> predecessor.exceptionally(error -> null))
+                        .toArray(CompletableFuture[]::new))
+                .thenCompose(ignored -> run(task, 1));
+
+        orderTails.put(orderId, future);
+        distinctProductIds.forEach(productId -> productTails.put(productId, future));
+        future.whenComplete((result, error) -> release(orderId, distinctProductIds, future));
+        return future;
+    }
+
+    // Les tentatives suivantes attendent hors du pool : les workers restent aux autres produits
+    private CompletableFuture<Void> run(Runnable task, int attempt) {
+        Executor target = attempt == 1
+                ? executor
+                : CompletableFuture.delayedExecutor(retryBackoff.toMillis() * (attempt - 1), TimeUnit.MILLISECONDS, executor);
+        CompletableFuture<Void> run = CompletableFuture.runAsync(task, target);
+        if (attempt >= attempts) {
+            return run;
+        }
+        return run.exceptionallyCompose(error -> {
+            log.warn("⚠️ Event failed (attempt {}/{}), retrying before the next ones: {}",
+                    attempt, attempts, error.getMessage());
+            return run(task, attempt + 1);
+        });
+    }
+
+    private synchronized void release(long orderId, Collection<Long> productIds, CompletableFuture<Void> future) {
+        orderTails.remove(orderId, future);
+        productIds.forEach(productId -> productTails.remove(productId, future));
+    }
+
+    private static void addIfPresent(List<CompletableFuture<Void>> predecessors, CompletableFuture<Void> tail) {
+        if (tail != null && !predecessors.contains(tail)) {
+            predecessors.add(tail);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("⚠️ Order workers did not finish in time, pending events will be redelivered");
+            executor.shutdownNow();
+        }
+    }
+
+}
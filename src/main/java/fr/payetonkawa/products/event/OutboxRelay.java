@@ -0,0 +1,131 @@
+package fr.payetonkawa.products.event;
+
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.entity.OutboxDeadLetter;
+import fr.payetonkawa.products.entity.OutboxEvent;
+import fr.payetonkawa.products.messaging.ExchangeQueues;
+import fr.payetonkawa.products.repository.OutboxDeadLetterRepository;
+import fr.payetonkawa.products.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxRelay {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxDeadLetterRepository outboxDeadLetterRepository;
+    private final RabbitOperations rabbitOperations;
+    private final TransactionOperations transactionOperations;
+    private final ProductsProperties productsProperties;
+    private final EventMetrics eventMetrics;
+
+    @Scheduled(fixedDelayString = "${products.outbox.poll-interval:200ms}")
+    public void relay() {
+        int batchSize = productsProperties.getOutbox().getBatchSize();
+        // Vide l'outbox par lots tant que les lots sont pleins, puis attend le prochain passage
+        Integer relayed;
+        do {
+            relayed = transactionOperations.execute(status -> relayBatch(batchSize));
+        } while (relayed != null && relayed == batchSize);
+    }
+
+    private int relayBatch(int batchSize) {
+        Instant now = Instant.now();
+        List<OutboxEvent> batch = outboxEventRepository.findDue(now, Limit.of(batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        Timer.Sample publishing = eventMetrics.start();
+        try {
+            publish(batch);
+        } catch (AmqpException e) {
+            eventMetrics.recordOutboxFailure();
+            log.warn("⚠️ Outbox relay failed for {} events (first id {}), retrying one by one: {}",
+                    batch.size(), batch.getFirst().getId(), e.getMessage());
+            return relayOneByOne(batch, e, now);
+        }
+
+        eventMetrics.recordOutboxPublished(publishing, batch.size(),
+                Duration.between(batch.getFirst().getCreatedAt(), Instant.now()));
+        outboxEventRepository.deleteAllInBatch(batch);
+        log.debug("📤 Relayed {} outbox events", batch.size());
+        return batch.size();
+    }
+
+    // Isole la ligne fautive : les précédentes partent, elle seule est repoussée, les suivantes attendent le prochain passage
+    private int relayOneByOne(List<OutboxEvent> batch, AmqpException batchFailure, Instant now) {
+        if (batch.size() == 1) {
+            reschedule(batch.getFirst(), batchFailure, now);
+            return 0;
+        }
+        Timer.Sample publishing = eventMetrics.start();
+        List<OutboxEvent> relayed = new ArrayList<>();
+        for (OutboxEvent outboxEvent : batch) {
+            try {
+                publish(List.of(outboxEvent));
+                relayed.add(outboxEvent);
+            } catch (AmqpException e) {
+                reschedule(outboxEvent, e, now);
+                break;
+            }
+        }
+        if (!relayed.isEmpty()) {
+            eventMetrics.recordOutboxPublished(publishing, relayed.size(),
+                    Duration.between(relayed.getFirst().getCreatedAt(), Instant.now()));
+            outboxEventRepository.deleteAllInBatch(relayed);
+        }
+        return relayed.size();
+    }
+
+    private void publish(List<OutboxEvent> outboxEvents) {
+        // Même canal pour tout le lot : un seul aller-retour de confirmation
+        rabbitOperations.invoke(operations -> {
+            for (OutboxEvent outboxEvent : outboxEvents) {
+                Message message = EventPublisher.toAmqpMessage(outboxEvent.getBody());
+                message.getMessageProperties().setMessageId("product-outbox-" + outboxEvent.getId());
+                operations.send(ExchangeQueues.EXCHANGE_NAME, outboxEvent.getRoutingKey(), message);
+            }
+            operations.waitForConfirmsOrDie(productsProperties.getOutbox().getConfirmTimeout().toMillis());
+            return null;
+        });
+    }
+
+    private void reschedule(OutboxEvent outboxEvent, AmqpException failure, Instant now) {
+        ProductsProperties.Outbox outbox = productsProperties.getOutbox();
+        int attempts = outboxEvent.getAttempts() + 1;
+        outboxEvent.setAttempts(attempts);
+        if (attempts >= outbox.getMaxAttempts()) {
+            String error = String.valueOf(failure.getMessage());
+            outboxDeadLetterRepository.save(new OutboxDeadLetter(outboxEvent, now,
+                    error.substring(0, Math.min(error.length(), 1_000))));
+            outboxEventRepository.delete(outboxEvent);
+            eventMetrics.recordOutboxParked();
+            log.error("❌ Outbox event {} ({}) parked in outbox_dead_letter after {} attempts: {}",
+                    outboxEvent.getId(), outboxEvent.getRoutingKey(), attempts, error);
+            return;
+        }
+        Duration backoff = outbox.getRetryBackoff().multipliedBy(1L << Math.min(attempts - 1, 20));
+        if (backoff.compareTo(outbox.getMaxRetryBackoff()) > 0) {
+            backoff = outbox.getMaxRetryBackoff();
+        }
+        outboxEvent.setNextAttemptAt(now.plus(backoff));
+        log.warn("⚠️ Outbox event {} failed (attempt {}/{}), next try in {}",
+                outboxEvent.getId(), attempts, outbox.getMaxAttempts(), backoff);
+    }
+}
@@ -0,0 +1,85 @@
+package fr.payetonkawa.products.event;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.entity.ProcessedEvent;
+import fr.payetonkawa.products.messaging.OrderEvent;
+import fr.payetonkawa.products.repository.ProcessedEventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+
+@Slf4j
+@Component
+public class ProcessedEventLedger {
+
+    private final ProcessedEventRepository processedEventRepository;
+    private final ProductsProperties productsProperties;
+    // Contient uniquement des clés déjà committées : un hit est un doublon certain, sans requête
+    private final Cache<String, Boolean> recentKeys;
+
+    public ProcessedEventLedger(ProcessedEventRepository processedEventRepository, ProductsProperties productsProperties) {
+        this.processedEventRepository = processedEventRepository;
+        this.productsProperties = productsProperties;
+        this.recentKeys = Caffeine.newBuilder()
+                .maximumSize(productsProperties.getDeduplication().getCacheSize())
+                .build();
+    }
+
+    // Identifiant fourni par le producteur (correlationId, sinon messageId AMQP), jamais dérivé du contenu :
+    // deux modifications légitimes d'une commande peuvent avoir le même corps (A -> B -> A -> B).
+    // null pour un order.updated sans identifiant : il n'est pas dédupliqué.
+    public static String keyOf(String routingKey, OrderEvent event, String messageId) {
+        if (event.correlationId() != null && !event.correlationId().isBlank()) {
+            return routingKey + ":" + event.correlationId();
+        }
+        if (messageId != null && !messageId.isBlank()) {
+            return routingKey + ":message:" + messageId;
+        }
+        if (event instanceof OrderEvent.Updated) {
+            return null;
+        }
+        // Un seul événement de ce type par commande
+        return routingKey + ":" + event.orderId();
+    }
+
+    // À appeler dans la transaction du traitement : la clé n'est enregistrée que si le stock l'est aussi
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean markProcessed(String eventKey) {
+        if (eventKey == null) {
+            return true;
+        }
+        if (recentKeys.getIfPresent(eventKey) != null || processedEventRepository.existsById(eventKey)) {
+            return false;
+        }
+        // Flush immédiat : une livraison concurrente échoue ici, avant toute modification de stock
+        processedEventRepository.saveAndFlush(new ProcessedEvent(eventKey, Instant.now()));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recentKeys.put(eventKey, Boolean.TRUE);
+                }
+            });
+        } else {
+            recentKeys.put(eventKey, Boolean.TRUE);
+        }
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${products.deduplication.purge-interval:1h}")
+    public void purge() {
+        Instant before = Instant.now().minus(productsProperties.getDeduplication().getRetention());
+        int purged = processedEventRepository.deleteProcessedBefore(before);
+        if (purged > 0) {
+            log.info("🧹 Purged {} processed events older than {}", purged, before);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package fr.payetonkawa.products.event;
+
+import java.util.Collection;
+import java.util.List;
+
+public record ProductsChangedEvent(Collection<Long> productIds, boolean deleted) {
+
+    public ProductsChangedEvent(Collection<Long> productIds) {
+        this(productIds, false);
+    }
+
+    public static ProductsChangedEvent deleted(Long productId) {
+        return new ProductsChangedEvent(List.of(productId), true);
+    }
+}
@@ -0,0 +1,7 @@
+package fr.payetonkawa.products.exception;
+
+public class StockNotOwnedException extends RuntimeException {
+    public StockNotOwnedException(String message) {
+        super(message);
+    }
+}
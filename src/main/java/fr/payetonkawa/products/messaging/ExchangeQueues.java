@@ -3,4 +3,5 @@ package fr.payetonkawa.products.messaging;
 public class ExchangeQueues {
     public static final String EXCHANGE_NAME = "global.events";
     public static final String PRODUCT_QUEUE_NAME = "service.product.queue";
+    public static final String PRODUCT_UPDATED_ROUTING_KEY = "product.updated";
 }
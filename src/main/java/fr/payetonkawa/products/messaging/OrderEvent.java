@@ -0,0 +1,44 @@
+package fr.payetonkawa.products.messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public sealed interface OrderEvent {
+
+    long orderId();
+
+    String correlationId();
+
+    List<OrderLine> items();
+
+    default List<Long> productIds() {
+        List<Long> productIds = new ArrayList<>(items().size());
+        items().forEach(line -> productIds.add(line.itemId()));
+        return productIds;
+    }
+
+    record Created(long orderId, String correlationId, List<OrderLine> items) implements OrderEvent {
+    }
+
+    record Deleted(long orderId, String correlationId, List<OrderLine> items) implements OrderEvent {
+    }
+
+    record Cancelled(long orderId, String correlationId, List<OrderLine> items) implements OrderEvent {
+    }
+
+    // Commande payée : le stock réservé est définitivement consommé
+    record Completed(long orderId, String correlationId, List<OrderLine> items) implements OrderEvent {
+    }
+
+    record Updated(long orderId, String correlationId, List<OrderLine> previousItems,
+                   List<OrderLine> items) implements OrderEvent {
+
+        @Override
+        public List<Long> productIds() {
+            List<Long> productIds = new ArrayList<>(previousItems.size() + items.size());
+            previousItems.forEach(line -> productIds.add(line.itemId()));
+            items.forEach(line -> productIds.add(line.itemId()));
+            return productIds;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package fr.payetonkawa.products.messaging;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Lecture en une passe du corps AMQP, sans String ni arbre JSON intermédiaire
+public final class OrderEventDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private OrderEventDecoder() {
+    }
+
+    public static boolean supports(String routingKey) {
+        return switch (routingKey) {
+            case "order.created", "order.updated", "order.deleted", "order.cancelled", "order.completed" -> true;
+            default -> false;
+        };
+    }
+
+    public static OrderEvent decode(String routingKey, byte[] body) throws IOException {
+        if (!supports(routingKey)) {
+            throw new IllegalArgumentException("Unsupported routing key: " + routingKey);
+        }
+
+        String correlationId = null;
+        Long orderId = null;
+        List<OrderLine> items = List.of();
+        List<OrderLine> previousItems = List.of();
+
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                // Un correlationId objet ou tableau est ignoré : ses champs ne doivent pas être lus comme ceux de l'enveloppe
+                if ("correlationId".equals(field) && value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                    correlationId = parser.getValueAsString();
+                } else if ("payload".equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String payloadField = parser.currentName();
+                        JsonToken payloadValue = parser.nextToken();
+                        switch (payloadField) {
+                            case "orderId" -> orderId = readLong(parser, payloadValue, "orderId");
+                            case "items" -> items = readLines(parser, payloadValue);
+                            case "previousItems" -> previousItems = readLines(parser, payloadValue);
+                            default -> parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        if (orderId == null) {
+            throw new IllegalArgumentException("Missing orderId in '" + routingKey + "' payload");
+        }
+        return switch (routingKey) {
+            case "order.created" -> new OrderEvent.Created(orderId, correlationId, items);
+            case "order.deleted" -> new OrderEvent.Deleted(orderId, correlationId, items);
+            case "order.cancelled" -> new OrderEvent.Cancelled(orderId, correlationId, items);
+            case "order.completed" -> new OrderEvent.Completed(orderId, correlationId, items);
+            default -> new OrderEvent.Updated(orderId, correlationId, previousItems, items);
+        };
+    }
+
+    private static List<OrderLine> readLines(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return List.of();
+        }
+        expect(token, JsonToken.START_ARRAY);
+        List<OrderLine> lines = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            long itemId = -1;
+            int quantity = -1;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "itemId" -> itemId = readLong(parser, value, "itemId");
+                    case "quantity" -> quantity = readQuantity(parser, value);
+                    default -> parser.skipChildren();
+                }
+            }
+            if (itemId < 0 || quantity < 0) {
+                throw new IllegalArgumentException("Order line requires an itemId and a quantity");
+            }
+            lines.add(new OrderLine(itemId, quantity));
+        }
+        return lines;
+    }
+
+    // Accepte 12, 12.0 et "12" : les producteurs ne sont pas tous cohérents. 12.5 est refusé plutôt que tronqué
+    private static long readLong(JsonParser parser, JsonToken token, String field) throws IOException {
+        return switch (token) {
+            case VALUE_NUMBER_INT -> parser.getLongValue();
+            case VALUE_NUMBER_FLOAT -> {
+                double value = parser.getDoubleValue();
+                if (value != Math.rint(value) || Math.abs(value) >= 0x1p63) {
+                    throw new IllegalArgumentException("Invalid " + field + ": " + parser.getText());
+                }
+                yield (long) value;
+            }
+            case VALUE_STRING -> {
+                try {
+                    yield Long.parseLong(parser.getText().trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid " + field + ": " + parser.getText(), e);
+                }
+            }
+            default -> throw new IllegalArgumentException("Invalid " + field + " token: " + token);
+        };
+    }
+
+    // Une quantité est un nombre entier positif ou nul : ni chaîne, ni 2.9 ramené à 2.
+    // 0 reste accepté comme avant : des producteurs l'envoient pour une ligne retirée
+    private static int readQuantity(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT) {
+            throw new IllegalArgumentException("Invalid quantity token: " + token);
+        }
+        long quantity = readLong(parser, token, "quantity");
+        if (quantity < 0 || quantity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid quantity: " + parser.getText());
+        }
+        return (int) quantity;
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) {
+        if (actual != expected) {
+            throw new IllegalArgumentException("Expected " + expected + " but got " + actual);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package fr.payetonkawa.products.messaging;
+
+import fr.payetonkawa.products.util.LongIntMap;
+
+import java.util.List;
+
+public record OrderLine(long itemId, int quantity) {
+
+    // Quantités cumulées par produit : une commande peut répéter un itemId
+    public static LongIntMap quantities(List<OrderLine> items) {
+        LongIntMap quantities = new LongIntMap(items.size());
+        for (OrderLine item : items) {
+            quantities.add(item.itemId(), item.quantity());
+        }
+        return quantities;
+    }
+}
@@ -0,0 +1,9 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.entity.OutboxDeadLetter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface OutboxDeadLetterRepository extends JpaRepository<OutboxDeadLetter, Long> {
+}
@@ -0,0 +1,27 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.entity.OutboxEvent;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.SpecHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // FOR UPDATE SKIP LOCKED (-2) : chaque réplique relaie des lignes différentes sans attendre les autres
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = SpecHints.HINT_SPEC_LOCK_TIMEOUT, value = "-2"))
+    // Les lignes en attente de leur prochain essai ne bloquent pas la tête de l'outbox
+    @Query("select e from OutboxEvent e where e.nextAttemptAt is null or e.nextAttemptAt <= :now order by e.id")
+    List<OutboxEvent> findDue(@Param("now") Instant now, Limit limit);
+}
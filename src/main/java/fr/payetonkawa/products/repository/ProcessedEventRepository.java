@@ -0,0 +1,20 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.entity.ProcessedEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+@Repository
+public interface ProcessedEventRepository extends JpaRepository<ProcessedEvent, String> {
+
+    @Transactional
+    @Modifying
+    @Query("delete from ProcessedEvent e where e.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") Instant before);
+}
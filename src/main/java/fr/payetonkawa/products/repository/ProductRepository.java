@@ -1,9 +1,64 @@
 package fr.payetonkawa.products.repository;
 
+import fr.payetonkawa.products.dto.ProductDto;
+import fr.payetonkawa.products.dto.ProductVersion;
 import fr.payetonkawa.products.entity.Product;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductSearchRepository, ProductStockRepository {
+
+    List<Product> findByIdGreaterThanOrderByIdAsc(Long after, Limit limit);
+
+    // Projection DTO : rien n'est attaché au contexte de persistance pendant le parcours
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new fr.payetonkawa.products.dto.ProductDto(p.id, p.name, p.price, p.description, p.color, p.stock, p.version, p.updatedAt) " +
+            "from Product p order by p.id")
+    Stream<ProductDto> streamAll();
+
+    // Requêtes conditionnelles : deux colonnes au lieu du produit complet
+    @Query("select new fr.payetonkawa.products.dto.ProductVersion(p.id, p.version, p.updatedAt) from Product p where p.id = :id")
+    Optional<ProductVersion> findVersionById(@Param("id") Long id);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Product p set p.stock = p.stock + :quantity, p.version = p.version + 1, p.updatedAt = instant " +
+            "where p.id = :id")
+    int incrementStock(@Param("id") Long id, @Param("quantity") int quantity);
+
+    List<Product> findByChangeSeqGreaterThanOrderByChangeSeqAsc(long since, Limit limit);
+
+    // Verrous pris dans l'ordre des ids : deux modifications de commande concurrentes ne peuvent pas s'interbloquer
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from Product p where p.id in :ids order by p.id")
+    List<Product> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    // Nouveau numéro de modification, pris au dernier moment pour suivre l'ordre des commits au plus près
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query(nativeQuery = true, value = "update product set change_seq = nextval('product_change_seq'), updated_at = :now " +
+            "where id in (:ids)")
+    int touchChangeSeq(@Param("ids") Collection<Long> ids, @Param("now") Instant now);
+
+    // Stock réel = colonne + deltas du journal pas encore reportés, lus dans le même instantané
+    @Query("select p.stock + coalesce((select sum(j.delta) from StockJournalEntry j where j.productId = p.id), 0) " +
+            "from Product p where p.id = :id")
+    Optional<Long> findAvailableStock(@Param("id") Long id);
 }
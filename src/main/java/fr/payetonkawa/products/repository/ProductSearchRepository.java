@@ -0,0 +1,13 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.dto.ProductSearch;
+import fr.payetonkawa.products.entity.Product;
+
+import java.util.List;
+
+public interface ProductSearchRepository {
+
+    // Renvoie jusqu'à limit produits, dans l'ordre du tri demandé
+    List<Product> search(ProductSearch search, int limit);
+
+}
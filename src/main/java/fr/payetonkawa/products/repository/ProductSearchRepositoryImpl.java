@@ -0,0 +1,79 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.dto.ProductSearch;
+import fr.payetonkawa.products.entity.Product;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// SQL natif construit selon les critères présents : chaque combinaison reste couverte par un index de V2
+class ProductSearchRepositoryImpl implements ProductSearchRepository {
+
+    // Doit rester identique à l'expression de l'index GIN idx_product_search
+    private static final String DOCUMENT = "to_tsvector('french', coalesce(p.name, '') || ' ' || coalesce(p.description, ''))";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Product> search(ProductSearch search, int limit) {
+        List<String> predicates = new ArrayList<>();
+        Map<String, Object> parameters = new HashMap<>();
+
+        if (search.getText() != null) {
+            predicates.add(DOCUMENT + " @@ plainto_tsquery('french', :text)");
+            parameters.put("text", search.getText());
+        }
+        if (search.getColor() != null) {
+            predicates.add("p.color = :color");
+            parameters.put("color", search.getColor());
+        }
+        if (search.getMinPrice() != null) {
+            predicates.add("p.price >= :minPrice");
+            parameters.put("minPrice", search.getMinPrice());
+        }
+        if (search.getMaxPrice() != null) {
+            predicates.add("p.price <= :maxPrice");
+            parameters.put("maxPrice", search.getMaxPrice());
+        }
+
+        ProductSearch.Cursor after = search.getAfter();
+        if (after != null) {
+            // Comparaison de tuples : une seule borne de parcours sur l'index (tri, id)
+            switch (search.getSort()) {
+                case ID -> predicates.add("p.id > :afterId");
+                case PRICE -> predicates.add("(p.price, p.id) > (:afterValue, :afterId)");
+                case PRICE_DESC -> predicates.add("(p.price, p.id) < (:afterValue, :afterId)");
+                case NAME -> predicates.add("(p.name, p.id) > (:afterValue, :afterId)");
+            }
+            parameters.put("afterId", after.id());
+            switch (search.getSort()) {
+                case PRICE, PRICE_DESC -> parameters.put("afterValue", after.priceValue());
+                case NAME -> parameters.put("afterValue", after.value());
+                case ID -> { }
+            }
+        }
+
+        StringBuilder sql = new StringBuilder("select p.* from product p");
+        if (!predicates.isEmpty()) {
+            sql.append(" where ").append(String.join(" and ", predicates));
+        }
+        sql.append(switch (search.getSort()) {
+            case ID -> " order by p.id";
+            case PRICE -> " order by p.price, p.id";
+            case PRICE_DESC -> " order by p.price desc, p.id desc";
+            case NAME -> " order by p.name, p.id";
+        });
+
+        Query query = entityManager.createNativeQuery(sql.toString(), Product.class);
+        parameters.forEach(query::setParameter);
+        return query.setMaxResults(limit).getResultList();
+    }
+
+}
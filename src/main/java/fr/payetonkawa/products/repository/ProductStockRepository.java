@@ -0,0 +1,10 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.util.LongIntMap;
+
+public interface ProductStockRepository {
+
+    // Décrémente chaque produit qui a encore assez de stock, en une seule requête ; renvoie le nombre de produits décrémentés
+    int decrementStocks(LongIntMap quantities);
+
+}
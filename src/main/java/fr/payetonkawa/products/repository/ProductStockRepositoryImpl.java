@@ -0,0 +1,50 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.util.LongIntMap;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Un UPDATE conditionnel pour toute une commande : la quantité de chaque ligne est choisie par un CASE sur l'id,
+// ce qui reste portable entre PostgreSQL et H2 (pas d'UPDATE ... FROM (VALUES ...) sur H2)
+class ProductStockRepositoryImpl implements ProductStockRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int decrementStocks(LongIntMap quantities) {
+        if (quantities.isEmpty()) {
+            return 0;
+        }
+        long[] productIds = quantities.sortedKeys();
+        StringBuilder quantity = new StringBuilder("case id");
+        for (int i = 0; i < productIds.length; i++) {
+            quantity.append(" when :id").append(i).append(" then :quantity").append(i);
+        }
+        quantity.append(" end");
+
+        Query query = entityManager.createNativeQuery("update product set stock = stock - " + quantity
+                + ", version = version + 1, updated_at = current_timestamp"
+                + " where id in (:ids) and stock >= " + quantity);
+        List<Long> ids = new ArrayList<>(productIds.length);
+        for (int i = 0; i < productIds.length; i++) {
+            query.setParameter("id" + i, productIds[i]);
+            query.setParameter("quantity" + i, quantities.get(productIds[i]));
+            ids.add(productIds[i]);
+        }
+        query.setParameter("ids", ids);
+
+        // Mêmes garanties que flushAutomatically / clearAutomatically sur les autres mises à jour de stock
+        entityManager.flush();
+        int updated = query.executeUpdate();
+        entityManager.clear();
+        return updated;
+    }
+
+}
@@ -0,0 +1,32 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.entity.ProductTombstone;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface ProductTombstoneRepository extends JpaRepository<ProductTombstone, Long> {
+
+    List<ProductTombstone> findByChangeSeqGreaterThanOrderByChangeSeqAsc(long since, Limit limit);
+
+    // Une suppression répétée garde la première pierre tombale
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = "insert into product_tombstone (product_id, change_seq, deleted_at) " +
+            "select :id, nextval('product_change_seq'), :now " +
+            "where not exists (select 1 from product_tombstone where product_id = :id)")
+    int insertIfAbsent(@Param("id") Long id, @Param("now") Instant now);
+
+    @Transactional
+    @Modifying
+    @Query("delete from ProductTombstone t where t.deletedAt < :before")
+    int deleteDeletedBefore(@Param("before") Instant before);
+}
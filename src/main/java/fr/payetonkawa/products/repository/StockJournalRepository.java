@@ -0,0 +1,22 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.entity.StockJournalEntry;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.SpecHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface StockJournalRepository extends JpaRepository<StockJournalEntry, Long> {
+
+    // Mêmes garanties que l'outbox : deux passages concurrents ne reportent jamais la même ligne
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = SpecHints.HINT_SPEC_LOCK_TIMEOUT, value = "-2"))
+    List<StockJournalEntry> findByOrderByIdAsc(Limit limit);
+}
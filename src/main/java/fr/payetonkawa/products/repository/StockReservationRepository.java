@@ -0,0 +1,27 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.entity.StockReservation;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.SpecHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface StockReservationRepository extends JpaRepository<StockReservation, Long> {
+
+    // Parcours de l'index expires_at depuis le début : seules les lignes échues sont lues
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = SpecHints.HINT_SPEC_LOCK_TIMEOUT, value = "-2"))
+    List<StockReservation> findByExpiresAtBeforeOrderByExpiresAtAsc(Instant now, Limit limit);
+
+    // Verrou bloquant : une annulation attend l'expiration en cours au lieu de rendre le stock une seconde fois
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<StockReservation> findByOrderId(long orderId);
+}
@@ -0,0 +1,199 @@
+package fr.payetonkawa.products.service;
+
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.entity.StockJournalEntry;
+import fr.payetonkawa.products.event.ProductsChangedEvent;
+import fr.payetonkawa.products.repository.ProductRepository;
+import fr.payetonkawa.products.repository.StockJournalRepository;
+import fr.payetonkawa.products.util.LongIntMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Stock des produits chauds servi depuis la mémoire (mode IN_MEMORY).
+// Chaque mouvement est journalisé dans la transaction de la commande (INSERT seul, sans verrou sur product),
+// puis flush() reporte les deltas cumulés par produit : une ligne product est écrite une fois par passage.
+// Après un redémarrage, les compteurs sont rechargés depuis stock + journal : rien n'est perdu.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InMemoryStockLedger {
+
+    private final ProductRepository productRepository;
+    private final StockJournalRepository stockJournalRepository;
+    private final TransactionOperations transactionOperations;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final ProductsProperties productsProperties;
+    private final Map<Long, AtomicInteger> counters = new ConcurrentHashMap<>();
+    private volatile boolean drained;
+
+    // Renvoie les produits en rupture ; rien n'est réservé dans ce cas
+    @Transactional
+    public List<Long> reserve(LongIntMap quantities) {
+        List<Long> failedItemIds = new ArrayList<>();
+        quantities.forEach((productId, quantity) -> {
+            AtomicInteger counter = counter(productId);
+            if (counter == null || counter.get() < quantity) {
+                failedItemIds.add(productId);
+            }
+        });
+        if (!failedItemIds.isEmpty()) {
+            return failedItemIds;
+        }
+
+        // CAS avec plancher à zéro, dans l'ordre des ids ; un échec annule les décréments déjà faits
+        long[] productIds = quantities.sortedKeys();
+        AtomicInteger[] reserved = new AtomicInteger[productIds.length];
+        for (int i = 0; i < productIds.length; i++) {
+            reserved[i] = counter(productIds[i]);
+            if (reserved[i] == null || !tryDecrement(reserved[i], quantities.get(productIds[i]))) {
+                giveBack(productIds, reserved, i, quantities);
+                return List.of(productIds[i]);
+            }
+        }
+
+        List<Map.Entry<Long, Integer>> deltas = new ArrayList<>(productIds.length);
+        for (long productId : productIds) {
+            deltas.add(Map.entry(productId, -quantities.get(productId)));
+        }
+        journal(deltas);
+        // Le décrément est visible tout de suite ; il est rendu si la commande n'est pas committée
+        afterCompletion(false, () -> giveBack(productIds, reserved, productIds.length, quantities));
+        return List.of();
+    }
+
+    @Transactional
+    public boolean release(Long productId, int quantity) {
+        AtomicInteger counter = counter(productId);
+        if (counter == null) {
+            return false;
+        }
+        journal(List.of(Map.entry(productId, quantity)));
+        // Restitué seulement après commit : sinon une réservation pourrait consommer du stock annulé
+        afterCompletion(true, () -> counter.addAndGet(quantity));
+        return true;
+    }
+
+    // Stock fixé à la main (PATCH) : converti en delta pour ne pas écraser les réservations pas encore reportées
+    @Transactional
+    public void set(Long productId, int stock) {
+        AtomicInteger counter = counter(productId);
+        if (counter == null) {
+            return;
+        }
+        int previous = counter.getAndSet(stock);
+        journal(List.of(Map.entry(productId, stock - previous)));
+        afterCompletion(false, () -> counter.addAndGet(previous - stock));
+    }
+
+    public void forget(Long productId) {
+        counters.remove(productId);
+    }
+
+    @Scheduled(fixedDelayString = "${products.stock.flush-interval:100ms}")
+    public void flush() {
+        // Deux instances qui vident le journal en même temps reporteraient les mêmes lignes
+        if (!productsProperties.getStock().isStockOwner()) {
+            return;
+        }
+        // Hors mode IN_MEMORY, un seul passage suffit à vider un journal laissé par un changement de mode
+        if (drained && productsProperties.getStock().getUpdateMode() != ProductsProperties.StockUpdateMode.IN_MEMORY) {
+            return;
+        }
+        int batchSize = productsProperties.getStock().getFlushBatchSize();
+        Integer flushed;
+        do {
+            flushed = transactionOperations.execute(status -> flushBatch(batchSize));
+        } while (flushed != null && flushed == batchSize);
+        drained = true;
+    }
+
+    private int flushBatch(int batchSize) {
+        List<StockJournalEntry> batch = stockJournalRepository.findByOrderByIdAsc(Limit.of(batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        // Une mise à jour par produit, dans l'ordre des ids pour ne pas croiser les décréments atomiques
+        LongIntMap deltas = new LongIntMap();
+        batch.forEach(entry -> deltas.add(entry.getProductId(), entry.getDelta()));
+        long[] productIds = deltas.sortedKeys();
+        for (long productId : productIds) {
+            int delta = deltas.get(productId);
+            if (delta != 0) {
+                productRepository.incrementStock(productId, delta);
+            }
+        }
+        stockJournalRepository.deleteAllInBatch(batch);
+        applicationEventPublisher.publishEvent(new ProductsChangedEvent(Arrays.stream(productIds).boxed().toList()));
+        log.debug("💾 Flushed {} stock movements on {} products", batch.size(), deltas.size());
+        return batch.size();
+    }
+
+    private AtomicInteger counter(Long productId) {
+        AtomicInteger counter = counters.get(productId);
+        if (counter != null) {
+            return counter;
+        }
+        // Chargement hors de computeIfAbsent : la requête ne bloque pas les autres produits de la map
+        return productRepository.findAvailableStock(productId)
+                .map(stock -> counters.computeIfAbsent(productId, id -> new AtomicInteger(Math.toIntExact(stock))))
+                .orElse(null);
+    }
+
+    private static void giveBack(long[] productIds, AtomicInteger[] counters, int count, LongIntMap quantities) {
+        for (int i = 0; i < count; i++) {
+            counters[i].addAndGet(quantities.get(productIds[i]));
+        }
+    }
+
+    private static boolean tryDecrement(AtomicInteger counter, int quantity) {
+        int current;
+        do {
+            current = counter.get();
+            if (current < quantity) {
+                return false;
+            }
+        } while (!counter.compareAndSet(current, current - quantity));
+        return true;
+    }
+
+    private void journal(List<Map.Entry<Long, Integer>> deltas) {
+        Instant now = Instant.now();
+        stockJournalRepository.saveAll(deltas.stream()
+                .map(delta -> new StockJournalEntry(delta.getKey(), delta.getValue(), now))
+                .toList());
+    }
+
+    private static void afterCompletion(boolean onCommit, Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (onCommit) {
+                action.run();
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if ((status == STATUS_COMMITTED) == onCommit) {
+                    action.run();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,85 @@
+package fr.payetonkawa.products.service;
+
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.dto.ProductChange;
+import fr.payetonkawa.products.dto.ProductChangePage;
+import fr.payetonkawa.products.event.ProductsChangedEvent;
+import fr.payetonkawa.products.repository.ProductRepository;
+import fr.payetonkawa.products.repository.ProductTombstoneRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+// Modifications du catalogue dans l'ordre de change_seq, suppressions comprises.
+// Le numéro est pris avant le commit, mais deux transactions peuvent encore committer dans le désordre :
+// une modification n'est servie qu'après settle-delay, quand toutes celles numérotées avant elle sont visibles.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProductChangeFeed {
+
+    private final ProductRepository productRepository;
+    private final ProductTombstoneRepository productTombstoneRepository;
+    private final ProductsProperties productsProperties;
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        Instant now = Instant.now();
+        // Les lignes sont déjà verrouillées par la transaction qui les a modifiées : pas de nouvelle attente ici
+        TreeSet<Long> ids = new TreeSet<>(event.productIds());
+        if (event.deleted()) {
+            ids.forEach(id -> productTombstoneRepository.insertIfAbsent(id, now));
+        } else if (!ids.isEmpty()) {
+            productRepository.touchChangeSeq(ids, now);
+        }
+    }
+
+    // Pas readOnly : toujours sur le primaire, un réplica en retard de plus de settle-delay ferait sauter des changements
+    @Transactional
+    public ProductChangePage getChanges(long since, int limit) {
+        int pageSize = Math.clamp(limit, 1, ProductService.MAX_PAGE_SIZE);
+        // pageSize lignes par source suffisent : la page fusionnée n'en contient pas plus
+        List<Candidate> candidates = new ArrayList<>();
+        productRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(since, Limit.of(pageSize))
+                .forEach(product -> candidates.add(new Candidate(ProductChange.of(product), product.getUpdatedAt())));
+        productTombstoneRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(since, Limit.of(pageSize))
+                .forEach(tombstone -> candidates.add(new Candidate(ProductChange.of(tombstone), tombstone.getDeletedAt())));
+        candidates.sort(Comparator.comparingLong(candidate -> candidate.change().getChangeSeq()));
+
+        // Arrêt à la première modification trop récente : le curseur ne doit jamais sauter un numéro pas encore visible
+        Instant settled = Instant.now().minus(productsProperties.getChanges().getSettleDelay());
+        List<ProductChange> changes = new ArrayList<>();
+        long cursor = since;
+        for (Candidate candidate : candidates) {
+            if (changes.size() == pageSize || candidate.changedAt().isAfter(settled)) {
+                break;
+            }
+            changes.add(candidate.change());
+            cursor = candidate.change().getChangeSeq();
+        }
+        return new ProductChangePage(changes, cursor);
+    }
+
+    @Scheduled(fixedDelayString = "${products.changes.purge-interval:1h}")
+    public void purge() {
+        Instant before = Instant.now().minus(productsProperties.getChanges().getTombstoneRetention());
+        int purged = productTombstoneRepository.deleteDeletedBefore(before);
+        if (purged > 0) {
+            log.info("🧹 Purged {} product tombstones older than {}", purged, before);
+        }
+    }
+
+    private record Candidate(ProductChange change, Instant changedAt) {
+    }
+}
@@ -1,17 +1,40 @@
 package fr.payetonkawa.products.service;
 
+import fr.payetonkawa.products.cache.ProductCache;
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.dto.BatchItemResult;
 import fr.payetonkawa.products.dto.ProductDto;
+import fr.payetonkawa.products.dto.ProductPage;
+import fr.payetonkawa.products.dto.ProductSearch;
+import fr.payetonkawa.products.dto.ProductSearchPage;
+import fr.payetonkawa.products.dto.ProductVersion;
+import fr.payetonkawa.products.dto.StockReservationResult;
 import fr.payetonkawa.products.entity.Product;
-import fr.payetonkawa.products.event.EventPublisher;
+import fr.payetonkawa.products.event.ProductsChangedEvent;
 import fr.payetonkawa.products.exception.MissingDataException;
+import fr.payetonkawa.products.exception.StockNotOwnedException;
+import fr.payetonkawa.products.messaging.OrderLine;
 import fr.payetonkawa.products.repository.ProductRepository;
+import fr.payetonkawa.products.util.LongIntMap;
 import lombok.AllArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.slf4j.Logger;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @AllArgsConstructor
@@ -19,41 +42,228 @@ public class ProductService {
 
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(ProductService.class);
 
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final String INVALID_PRODUCT_MESSAGE = "Product name, description and price must be provided, stock cannot be negative";
+    private static final String STOCK_NOT_OWNED = "Stock can only be changed on the instance consuming order events";
+
     private final ProductRepository productRepository;
+    private final ProductsProperties productsProperties;
+    private final ProductCache productCache;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final InMemoryStockLedger stockLedger;
+
+    // Lectures en readOnly : routées vers le réplica quand il est configuré et à jour
+    @Transactional(readOnly = true)
+    public ProductPage getProducts(Long after, int limit) {
+        int pageSize = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+        // Une ligne de plus pour savoir s'il existe une page suivante
+        List<Product> products = productRepository.findByIdGreaterThanOrderByIdAsc(
+                after == null ? 0L : after, Limit.of(pageSize + 1));
+
+        if (products.size() <= pageSize) {
+            return new ProductPage(ProductDto.fromEntities(products), null);
+        }
+        List<Product> page = products.subList(0, pageSize);
+        return new ProductPage(ProductDto.fromEntities(page), page.get(pageSize - 1).getId());
+    }
+
+    // Réponse historique de GET /v1 : projection DTO, aucune entité chargée
+    @Transactional(readOnly = true)
+    public ProductPage getAllProducts() {
+        try (Stream<ProductDto> products = productRepository.streamAll()) {
+            return new ProductPage(products.toList(), null);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public ProductSearchPage searchProducts(ProductSearch search) {
+        int pageSize = Math.clamp(search.getLimit(), 1, MAX_PAGE_SIZE);
+        List<ProductDto> products = ProductDto.fromEntities(productRepository.search(search, pageSize + 1));
+
+        if (products.size() <= pageSize) {
+            return new ProductSearchPage(products, null);
+        }
+        List<ProductDto> page = products.subList(0, pageSize);
+        return new ProductSearchPage(page, ProductSearch.Cursor.of(search.getSort(), page.getLast()).encode());
+    }
 
-    public List<ProductDto> getAllProducts() {
-        return ProductDto.fromEntities(productRepository.findAll());
+    @Transactional(readOnly = true)
+    public void streamAllProducts(Consumer<ProductDto> consumer) {
+        try (Stream<ProductDto> products = productRepository.streamAll()) {
+            products.forEach(consumer);
+        }
     }
 
+    @Transactional(readOnly = true)
     public Optional<ProductDto> getProductById(Long id) {
-        return productRepository.findById(id)
-                .map(ProductDto::fromEntity);
+        return productCache.get(id, key -> productRepository.findById(key).map(ProductDto::fromEntity));
+    }
+
+    // Servi par le cache si possible, sinon par une projection : le produit n'est pas chargé
+    @Transactional(readOnly = true)
+    public Optional<ProductVersion> getProductVersion(Long id) {
+        return productCache.peek(id)
+                .map(ProductVersion::of)
+                .or(() -> productRepository.findVersionById(id));
     }
 
+    @Transactional(readOnly = true)
+    public List<ProductDto> getProductsByIds(List<Long> ids) {
+        checkBatchSize(ids.size());
+        // Une seule requête IN pour les produits absents du cache
+        Map<Long, ProductDto> products = productCache.getAll(ids, missing ->
+                productRepository.findAllById(missing).stream()
+                        .collect(Collectors.toMap(Product::getId, ProductDto::fromEntity)));
+        return ids.stream()
+                .distinct()
+                .map(products::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @Transactional
     public ProductDto createProduct(ProductDto product) {
-        if (product.getName() == null || product.getPrice() <= 0) {
-            throw new IllegalArgumentException("Product name and price must be provided");
+        if (!isValidForCreation(product)) {
+            throw new IllegalArgumentException(INVALID_PRODUCT_MESSAGE);
         }
+
+        Product savedProduct = productRepository.save(toEntity(product));
+        applicationEventPublisher.publishEvent(new ProductsChangedEvent(List.of(savedProduct.getId())));
+        return ProductDto.fromEntity(savedProduct);
+    }
+
+    @Transactional
+    public List<BatchItemResult> createProducts(List<ProductDto> products) {
+        checkBatchSize(products.size());
+        BatchItemResult[] results = new BatchItemResult[products.size()];
+        List<Integer> indexes = new ArrayList<>();
+        List<Product> newProducts = new ArrayList<>();
+
+        for (int i = 0; i < products.size(); i++) {
+            ProductDto product = products.get(i);
+            if (!isValidForCreation(product)) {
+                results[i] = BatchItemResult.failed(i, null, INVALID_PRODUCT_MESSAGE);
+                continue;
+            }
+            indexes.add(i);
+            newProducts.add(toEntity(product));
+        }
+
+        // Inserts groupés par JDBC (hibernate.jdbc.batch_size + séquence poolée)
+        List<Product> savedProducts = productRepository.saveAll(newProducts);
+        for (int j = 0; j < savedProducts.size(); j++) {
+            int index = indexes.get(j);
+            results[index] = BatchItemResult.succeeded(index, ProductDto.fromEntity(savedProducts.get(j)));
+        }
+        if (!savedProducts.isEmpty()) {
+            applicationEventPublisher.publishEvent(new ProductsChangedEvent(savedProducts.stream().map(Product::getId).toList()));
+        }
+        return List.of(results);
+    }
+
+    @Transactional
+    public ProductDto updateProduct(Long id, ProductDto product) {
+        Product existingProduct = productRepository.findById(id)
+                .orElseThrow(() -> new MissingDataException("Product not found"));
+        if (changesStock(product) && !productsProperties.getStock().isStockOwner()) {
+            throw new StockNotOwnedException(STOCK_NOT_OWNED);
+        }
+
+        applyChanges(existingProduct, product, !inMemoryStock());
+
+        ProductDto updated = ProductDto.fromEntity(productRepository.save(existingProduct));
+        if (inMemoryStock() && changesStock(product)) {
+            // Seul le registre porte le nouveau stock : toucher l'entité ferait appliquer l'écart deux fois au flush
+            stockLedger.set(id, product.getStock());
+            updated.setStock(product.getStock());
+        }
+        applicationEventPublisher.publishEvent(new ProductsChangedEvent(List.of(id)));
+        return updated;
+    }
+
+    @Transactional
+    public List<BatchItemResult> updateProducts(List<ProductDto> products) {
+        checkBatchSize(products.size());
+        Set<Long> ids = products.stream()
+                .map(ProductDto::getId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Long, Product> existingProducts = productRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+
+        List<BatchItemResult> results = new ArrayList<>(products.size());
+        for (int i = 0; i < products.size(); i++) {
+            ProductDto product = products.get(i);
+            if (product.getId() == null) {
+                results.add(BatchItemResult.failed(i, null, "Product id must be provided"));
+                continue;
+            }
+            Product existingProduct = existingProducts.get(product.getId());
+            if (existingProduct == null) {
+                results.add(BatchItemResult.failed(i, product.getId(), "Product not found"));
+                continue;
+            }
+            if (changesStock(product) && !productsProperties.getStock().isStockOwner()) {
+                results.add(BatchItemResult.failed(i, product.getId(), STOCK_NOT_OWNED));
+                continue;
+            }
+            applyChanges(existingProduct, product, !inMemoryStock());
+            ProductDto updated = ProductDto.fromEntity(existingProduct);
+            if (inMemoryStock() && changesStock(product)) {
+                stockLedger.set(product.getId(), product.getStock());
+                updated.setStock(product.getStock());
+            }
+            results.add(BatchItemResult.succeeded(i, updated));
+        }
+
+        if (!existingProducts.isEmpty()) {
+            productRepository.saveAll(existingProducts.values());
+            applicationEventPublisher.publishEvent(new ProductsChangedEvent(List.copyOf(existingProducts.keySet())));
+        }
+        return results;
+    }
+
+    // Doit couvrir toutes les colonnes NOT NULL de product : une seule ligne refusée par la base annulerait tout le lot
+    private static boolean isValidForCreation(ProductDto product) {
+        return product.getName() != null && product.getDescription() != null
+                && product.getPrice() != null && product.getPrice() > 0
+                && (product.getStock() == null || product.getStock() >= 0);
+    }
+
+    // Un lot de mises à jour ne doit pas remettre à zéro le stock des lignes qui ne le mentionnent pas
+    private static boolean changesStock(ProductDto product) {
+        return product.getStock() != null && product.getStock() >= 0;
+    }
+
+    private static void checkBatchSize(int size) {
+        if (size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("A batch cannot contain more than " + MAX_PAGE_SIZE + " items");
+        }
+    }
+
+    private static Product toEntity(ProductDto product) {
         Product newProduct = new Product();
 
         newProduct.setName(product.getName());
         newProduct.setPrice(product.getPrice());
         newProduct.setDescription(product.getDescription());
         newProduct.setColor(product.getColor());
-        newProduct.setStock(product.getStock());
-
-        Product savedProduct = productRepository.save(newProduct);
-        return ProductDto.fromEntity(savedProduct);
+        newProduct.setStock(product.getStock() != null ? product.getStock() : 0);
+        return newProduct;
     }
 
-public ProductDto updateProduct(Long id, ProductDto product) {
-        Product existingProduct = productRepository.findById(id)
-                .orElseThrow(() -> new MissingDataException("Product not found"));
+    private boolean inMemoryStock() {
+        return productsProperties.getStock().getUpdateMode() == ProductsProperties.StockUpdateMode.IN_MEMORY;
+    }
 
+    // En mode IN_MEMORY, le stock passe par le registre pour ne pas écraser les réservations non reportées
+    private static void applyChanges(Product existingProduct, ProductDto product, boolean applyStock) {
         if (product.getName() != null) {
             existingProduct.setName(product.getName());
         }
-        if (product.getPrice() > 0) {
+        if (product.getPrice() != null && product.getPrice() > 0) {
             existingProduct.setPrice(product.getPrice());
         }
         if (product.getDescription() != null) {
@@ -62,52 +272,186 @@ public ProductDto updateProduct(Long id, ProductDto product) {
         if (product.getColor() != null) {
             existingProduct.setColor(product.getColor());
         }
-        if (product.getStock() >= 0) {
+        if (applyStock && changesStock(product)) {
             existingProduct.setStock(product.getStock());
         }
-
-        Product updatedProduct = productRepository.save(existingProduct);
-        return ProductDto.fromEntity(updatedProduct);
     }
 
+    @Transactional
     public void deleteProduct(Long id) {
+        // Un id inconnu ne doit pas laisser de suppression dans GET /v1/changes
+        if (!productRepository.existsById(id)) {
+            return;
+        }
         productRepository.deleteById(id);
+        stockLedger.forget(id);
+        applicationEventPublisher.publishEvent(ProductsChangedEvent.deleted(id));
+    }
+
+    @Transactional
+    public StockReservationResult verifyAndUpdateStock(List<OrderLine> items) {
+        LongIntMap quantities = OrderLine.quantities(items);
+
+        if (inMemoryStock()) {
+            // Ni lecture ni écriture sur product : le registre journalise, le report se fait en différé
+            List<Long> failedItemIds = stockLedger.reserve(quantities);
+            return failedItemIds.isEmpty()
+                    ? StockReservationResult.confirmed()
+                    : StockReservationResult.rejected(failedItemIds);
+        }
+
+        // Une seule requête pour toute la commande
+        Map<Long, Product> products = productRepository.findAllById(quantities.keyList()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+
+        List<Long> failedItemIds = insufficient(quantities, products);
+        if (!failedItemIds.isEmpty()) {
+            return StockReservationResult.rejected(failedItemIds);
+        }
+
+        if (productsProperties.getStock().getUpdateMode() == ProductsProperties.StockUpdateMode.OPTIMISTIC) {
+            // Un conflit de version fait échouer le flush et la transaction est rejouée par le listener
+            quantities.forEach((productId, quantity) -> {
+                Product product = products.get(productId);
+                product.setStock(product.getStock() - quantity);
+            });
+            productRepository.saveAll(products.values());
+            applicationEventPublisher.publishEvent(new ProductsChangedEvent(quantities.keyList()));
+            return StockReservationResult.confirmed();
+        }
+
+        // Un seul UPDATE conditionnel pour toute la commande. Une ligne non décrémentée a perdu une course depuis
+        // la lecture : la transaction est annulée et le listener rejoue l'événement, comme en mode OPTIMISTIC
+        if (productRepository.decrementStocks(quantities) < quantities.size()) {
+            throw new ConcurrencyFailureException("Stock changed concurrently for products " + quantities.keyList());
+        }
+
+        applicationEventPublisher.publishEvent(new ProductsChangedEvent(quantities.keyList()));
+        return StockReservationResult.confirmed();
+    }
+
+    // Mode lot : toutes les commandes d'un coup, verrous pris une fois dans l'ordre des ids, un seul flush.
+    // Chaque commande reste tout ou rien et est évaluée dans l'ordre d'arrivée contre le stock restant.
+    @Transactional
+    public List<StockReservationResult> verifyAndUpdateStockBatch(List<List<OrderLine>> orders) {
+        if (inMemoryStock()) {
+            return orders.stream().map(this::verifyAndUpdateStock).toList();
+        }
+
+        List<LongIntMap> quantities = new ArrayList<>(orders.size());
+        Set<Long> productIds = new TreeSet<>();
+        for (List<OrderLine> items : orders) {
+            LongIntMap order = OrderLine.quantities(items);
+            quantities.add(order);
+            productIds.addAll(order.keyList());
+        }
+        if (productIds.isEmpty()) {
+            return orders.stream().map(items -> StockReservationResult.confirmed()).toList();
+        }
+        Map<Long, Product> products = productRepository.findAllByIdForUpdate(productIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+
+        List<StockReservationResult> results = new ArrayList<>(orders.size());
+        Set<Long> changed = new TreeSet<>();
+        for (LongIntMap order : quantities) {
+            List<Long> failedItemIds = insufficient(order, products);
+            if (!failedItemIds.isEmpty()) {
+                results.add(StockReservationResult.rejected(failedItemIds));
+                continue;
+            }
+            order.forEach((productId, quantity) -> {
+                Product product = products.get(productId);
+                product.setStock(product.getStock() - quantity);
+            });
+            changed.addAll(order.keyList());
+            results.add(StockReservationResult.confirmed());
+        }
+
+        if (!changed.isEmpty()) {
+            productRepository.saveAll(changed.stream().map(products::get).toList());
+            applicationEventPublisher.publishEvent(new ProductsChangedEvent(List.copyOf(changed)));
+        }
+        return results;
     }
 
-    public boolean verifyAndUpdateStock(List<Map<String, Object>> items) {
-        for (Map<String, Object> item : items) {
-            Long productId = Long.valueOf(item.get("itemId").toString());
-            int quantity = (int) item.get("quantity");
-            var product = productRepository.findById(productId).orElse(null);
-            if (product == null || product.getStock() < quantity) {
-                return false;
+    // Modification de commande : un delta positif est à réserver en plus, un delta négatif est rendu
+    @Transactional
+    public StockReservationResult adjustStock(LongIntMap adjustments) {
+        LongIntMap additions = new LongIntMap(adjustments.size());
+        adjustments.forEach((productId, delta) -> {
+            if (delta > 0) {
+                additions.put(productId, delta);
             }
+        });
+
+        if (inMemoryStock()) {
+            List<Long> failedItemIds = stockLedger.reserve(additions);
+            if (!failedItemIds.isEmpty()) {
+                return StockReservationResult.rejected(failedItemIds);
+            }
+            adjustments.forEach((productId, delta) -> {
+                if (delta < 0) {
+                    stockLedger.release(productId, -delta);
+                }
+            });
+            return StockReservationResult.confirmed();
         }
 
-        for (Map<String, Object> item : items) {
-            Long productId = Long.valueOf(item.get("itemId").toString());
-            int quantity = (int) item.get("quantity");
-            var product = productRepository.findById(productId)
-                    .orElseThrow(() -> new MissingDataException("Product not found with id: " + productId));
-            product.setStock(product.getStock() - quantity);
-            productRepository.save(product);
+        // Une lecture verrouillée pour toute la commande, puis un seul flush groupé
+        Set<Long> productIds = new TreeSet<>();
+        adjustments.forEach((productId, delta) -> {
+            if (delta != 0) {
+                productIds.add(productId);
+            }
+        });
+        if (productIds.isEmpty()) {
+            return StockReservationResult.confirmed();
         }
+        Map<Long, Product> products = productRepository.findAllByIdForUpdate(productIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
 
-        return true;
+        List<Long> failedItemIds = insufficient(additions, additions.sortedKeys(), products);
+        if (!failedItemIds.isEmpty()) {
+            return StockReservationResult.rejected(failedItemIds);
+        }
+
+        // Un produit rendu mais supprimé entre-temps est ignoré, comme avec incrementStock
+        products.values().forEach(product -> product.setStock(product.getStock() - adjustments.get(product.getId())));
+        productRepository.saveAll(products.values());
+
+        applicationEventPublisher.publishEvent(new ProductsChangedEvent(List.copyOf(products.keySet())));
+        return StockReservationResult.confirmed();
+    }
+
+    // Produits absents ou sans assez de stock pour la quantité demandée, dans l'ordre des lignes
+    private static List<Long> insufficient(LongIntMap quantities, Map<Long, Product> products) {
+        return insufficient(quantities, quantities.keys(), products);
+    }
+
+    private static List<Long> insufficient(LongIntMap quantities, long[] productIds, Map<Long, Product> products) {
+        List<Long> failedItemIds = new ArrayList<>();
+        for (long productId : productIds) {
+            Product product = products.get(productId);
+            if (product == null || product.getStock() < quantities.get(productId)) {
+                failedItemIds.add(productId);
+            }
+        }
+        return failedItemIds;
     }
 
     public void restoreStock(Long productId, int quantity) {
-        var product = productRepository.findById(productId).orElse(null);
-        if (product == null) {
+        boolean restored = inMemoryStock()
+                ? stockLedger.release(productId, quantity)
+                : productRepository.incrementStock(productId, quantity) > 0;
+        if (!restored) {
             log.warn("🚫 Product with id {} not found, cannot restore stock", productId);
             return;
         }
 
-        product.setStock(product.getStock() + quantity);
-        productRepository.save(product);
-        log.info("🔄 Restored {} units to product ID {}", quantity, productId);
+        if (!inMemoryStock()) {
+            applicationEventPublisher.publishEvent(new ProductsChangedEvent(List.of(productId)));
+        }
+        log.debug("🔄 Restored {} units to product ID {}", quantity, productId);
     }
 
-
-
 }
@@ -0,0 +1,114 @@
+package fr.payetonkawa.products.service;
+
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.entity.StockReservation;
+import fr.payetonkawa.products.event.EventPublisher;
+import fr.payetonkawa.products.messaging.ExchangeMessage;
+import fr.payetonkawa.products.messaging.OrderLine;
+import fr.payetonkawa.products.repository.StockReservationRepository;
+import fr.payetonkawa.products.util.LongIntMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Stock retenu par commande, avec une échéance : sans order.completed, il revient au catalogue.
+// Quand le TTL est actif, ces lignes font foi pour ce qu'une commande détient encore.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StockReservationService {
+
+    private final StockReservationRepository stockReservationRepository;
+    private final ProductService productService;
+    private final EventPublisher eventPublisher;
+    private final TransactionOperations transactionOperations;
+    private final ProductsProperties productsProperties;
+
+    public boolean isEnabled() {
+        return productsProperties.getReservations().getTtl().isPositive();
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void hold(long orderId, List<OrderLine> items) {
+        Instant expiresAt = Instant.now().plus(productsProperties.getReservations().getTtl());
+        LongIntMap quantities = OrderLine.quantities(items);
+        List<StockReservation> reservations = new ArrayList<>(quantities.size());
+        quantities.forEach((productId, quantity) ->
+                reservations.add(new StockReservation(orderId, productId, quantity, expiresAt)));
+        stockReservationRepository.saveAll(reservations);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public LongIntMap held(long orderId) {
+        return quantities(stockReservationRepository.findByOrderId(orderId));
+    }
+
+    // Renvoie ce que la commande détenait encore : vide si la réservation a déjà expiré
+    @Transactional(propagation = Propagation.MANDATORY)
+    public LongIntMap release(long orderId) {
+        List<StockReservation> reservations = stockReservationRepository.findByOrderId(orderId);
+        LongIntMap quantities = quantities(reservations);
+        stockReservationRepository.deleteAllInBatch(reservations);
+        return quantities;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void replace(long orderId, List<OrderLine> items) {
+        release(orderId);
+        hold(orderId, items);
+    }
+
+    @Scheduled(fixedDelayString = "${products.reservations.expiry-interval:30s}")
+    public void expire() {
+        // La restitution passe par les compteurs IN_MEMORY : seule l'instance consommatrice peut la faire
+        if (!isEnabled() || !productsProperties.getStock().isStockOwner()) {
+            return;
+        }
+        int batchSize = productsProperties.getReservations().getExpiryBatchSize();
+        Integer expired;
+        do {
+            expired = transactionOperations.execute(status -> expireBatch(batchSize));
+        } while (expired != null && expired == batchSize);
+    }
+
+    private int expireBatch(int batchSize) {
+        List<StockReservation> batch = stockReservationRepository.findByExpiresAtBeforeOrderByExpiresAtAsc(
+                Instant.now(), Limit.of(batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        // Une restitution par produit pour tout le lot, dans l'ordre des ids
+        LongIntMap quantities = quantities(batch);
+        Set<Long> orderIds = new TreeSet<>();
+        batch.forEach(reservation -> orderIds.add(reservation.getOrderId()));
+        for (long productId : quantities.sortedKeys()) {
+            productService.restoreStock(productId, quantities.get(productId));
+        }
+        stockReservationRepository.deleteAllInBatch(batch);
+        orderIds.forEach(orderId -> eventPublisher.enqueue("product.stock.expired", ExchangeMessage.builder()
+                .payload(Map.of("orderId", orderId))
+                .build()));
+
+        log.info("⌛ Expired {} reservations of {} orders", batch.size(), orderIds.size());
+        return batch.size();
+    }
+
+    private static LongIntMap quantities(List<StockReservation> reservations) {
+        LongIntMap quantities = new LongIntMap(reservations.size());
+        reservations.forEach(reservation -> quantities.add(reservation.getProductId(), reservation.getQuantity()));
+        return quantities;
+    }
+}
@@ -0,0 +1,183 @@
+package fr.payetonkawa.products.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Map long -> int sans boxing pour cumuler des quantités par produit.
+// Clés et valeurs sont rangées dans l'ordre d'insertion ; une table d'index en adressage ouvert
+// (sondage linéaire) pointe dans ces tableaux. Pas de suppression : une entrée à 0 reste présente.
+public final class LongIntMap {
+
+    @FunctionalInterface
+    public interface LongIntConsumer {
+        void accept(long key, int value);
+    }
+
+    private static final int FREE = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int[] index;
+    private int size;
+
+    public LongIntMap() {
+        this(8);
+    }
+
+    public LongIntMap(int expectedSize) {
+        int capacity = Math.max(expectedSize, 4);
+        keys = new long[capacity];
+        values = new int[capacity];
+        index = newIndex(capacity);
+    }
+
+    public static LongIntMap copyOf(Map<Long, Integer> map) {
+        LongIntMap copy = new LongIntMap(map.size());
+        map.forEach(copy::put);
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return index[slot(key)] != FREE;
+    }
+
+    // 0 pour une clé absente
+    public int get(long key) {
+        int position = index[slot(key)];
+        return position == FREE ? 0 : values[position];
+    }
+
+    public void put(long key, int value) {
+        int slot = slot(key);
+        int position = index[slot];
+        if (position != FREE) {
+            values[position] = value;
+            return;
+        }
+        insert(slot, key, value);
+    }
+
+    // Ajoute delta à la valeur courante (0 si absente) et renvoie le nouveau total
+    public int add(long key, int delta) {
+        int slot = slot(key);
+        int position = index[slot];
+        if (position != FREE) {
+            return values[position] += delta;
+        }
+        insert(slot, key, delta);
+        return delta;
+    }
+
+    public void forEach(LongIntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(keys[i], values[i]);
+        }
+    }
+
+    // Clés dans l'ordre d'insertion
+    public long[] keys() {
+        return Arrays.copyOf(keys, size);
+    }
+
+    public long[] sortedKeys() {
+        long[] sorted = keys();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    // Pour les API qui attendent des Long (requêtes JPA, événements)
+    public List<Long> keyList() {
+        List<Long> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(keys[i]);
+        }
+        return list;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LongIntMap other) || other.size != size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            int position = other.index[other.slot(keys[i])];
+            if (position == FREE || other.values[position] != values[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < size; i++) {
+            hash += Long.hashCode(keys[i]) ^ values[i];
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < size; i++) {
+            builder.append(i == 0 ? "" : ", ").append(keys[i]).append('=').append(values[i]);
+        }
+        return builder.append('}').toString();
+    }
+
+    private void insert(int slot, long key, int value) {
+        if (size == keys.length) {
+            grow();
+            slot = slot(key);
+        }
+        keys[size] = key;
+        values[size] = value;
+        index[slot] = size++;
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+        index = newIndex(capacity);
+        for (int i = 0; i < size; i++) {
+            index[slot(keys[i])] = i;
+        }
+    }
+
+    // Case de la clé, ou première case libre sur son chemin de sondage
+    private int slot(long key) {
+        int mask = index.length - 1;
+        int slot = mix(key) & mask;
+        while (index[slot] != FREE && keys[index[slot]] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Table d'index au moins deux fois plus grande que la capacité : taux de remplissage <= 50 %
+    private static int[] newIndex(int capacity) {
+        int[] index = new int[Integer.highestOneBit(capacity - 1) << 2];
+        Arrays.fill(index, FREE);
+        return index;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
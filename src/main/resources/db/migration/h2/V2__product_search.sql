@@ -0,0 +1,4 @@
+-- Pas de tsvector sous H2 : seuls les index de tri et de filtre sont créés
+CREATE INDEX IF NOT EXISTS idx_product_price_id ON product (price, id);
+CREATE INDEX IF NOT EXISTS idx_product_name_id ON product (name, id);
+CREATE INDEX IF NOT EXISTS idx_product_color_price_id ON product (color, price, id);
@@ -0,0 +1,10 @@
+CREATE TABLE product_stock_correction (
+    product_id     BIGINT                      NOT NULL,
+    previous_stock INTEGER                     NOT NULL,
+    corrected_at   TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
+INSERT INTO product_stock_correction (product_id, previous_stock, corrected_at)
+SELECT id, stock, CURRENT_TIMESTAMP FROM product WHERE stock < 0;
+UPDATE product SET stock = 0 WHERE stock < 0;
+
+ALTER TABLE product ADD CONSTRAINT chk_product_stock_non_negative CHECK (stock >= 0);
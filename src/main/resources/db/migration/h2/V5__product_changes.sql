@@ -0,0 +1,12 @@
+CREATE SEQUENCE product_change_seq;
+
+ALTER TABLE product ADD COLUMN change_seq BIGINT DEFAULT NEXT VALUE FOR product_change_seq NOT NULL;
+CREATE INDEX idx_product_change_seq ON product (change_seq);
+
+CREATE TABLE product_tombstone (
+    product_id BIGINT                      NOT NULL PRIMARY KEY,
+    change_seq BIGINT                      NOT NULL,
+    deleted_at TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
+CREATE INDEX idx_product_tombstone_change_seq ON product_tombstone (change_seq);
+CREATE INDEX idx_product_tombstone_deleted_at ON product_tombstone (deleted_at);
@@ -0,0 +1,13 @@
+-- Prochain essai d'une ligne dont l'envoi a échoué (NULL : à envoyer dès le prochain passage)
+ALTER TABLE outbox_event ADD COLUMN next_attempt_at TIMESTAMP(6) WITH TIME ZONE;
+
+-- Lignes écartées après products.outbox.max-attempts échecs, à rejouer à la main
+CREATE TABLE outbox_dead_letter (
+    id          BIGINT                      NOT NULL PRIMARY KEY,
+    routing_key VARCHAR(255)                NOT NULL,
+    body        VARBINARY(1000000)          NOT NULL,
+    created_at  TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    attempts    INTEGER                     NOT NULL,
+    parked_at   TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    last_error  VARCHAR(1000)
+);
@@ -0,0 +1,2 @@
+-- Bases créées par l'ancien ddl-auto : product existait déjà sans version, et V1 ne la recrée pas
+ALTER TABLE product ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
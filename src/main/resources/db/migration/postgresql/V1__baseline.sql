@@ -0,0 +1,52 @@
+-- Schéma tel que créé jusqu'ici par ddl-auto ; idempotent pour les bases existantes
+
+CREATE SEQUENCE IF NOT EXISTS product_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS outbox_event_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS stock_journal_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS stock_reservation_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS product (
+    id          BIGINT           NOT NULL PRIMARY KEY,
+    name        VARCHAR(255)     NOT NULL,
+    price       FLOAT(53)        NOT NULL,
+    description VARCHAR(255)     NOT NULL,
+    color       VARCHAR(255),
+    stock       INTEGER          NOT NULL,
+    version     BIGINT DEFAULT 0 NOT NULL
+);
+
+-- Bases antérieures à product_seq (colonne IDENTITY) : la séquence repart au-dessus des ids existants
+SELECT setval('product_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM product) + 50,
+                                      (SELECT last_value FROM product_seq)));
+
+CREATE TABLE IF NOT EXISTS outbox_event (
+    id          BIGINT                      NOT NULL PRIMARY KEY,
+    routing_key VARCHAR(255)                NOT NULL,
+    body        BYTEA                       NOT NULL,
+    created_at  TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    attempts    INTEGER                     NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS processed_event (
+    event_key    VARCHAR(255)                NOT NULL PRIMARY KEY,
+    processed_at TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_processed_event_processed_at ON processed_event (processed_at);
+
+CREATE TABLE IF NOT EXISTS stock_journal (
+    id         BIGINT                      NOT NULL PRIMARY KEY,
+    product_id BIGINT                      NOT NULL,
+    delta      INTEGER                     NOT NULL,
+    created_at TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_stock_journal_product_id ON stock_journal (product_id);
+
+CREATE TABLE IF NOT EXISTS stock_reservation (
+    id         BIGINT                      NOT NULL PRIMARY KEY,
+    order_id   BIGINT                      NOT NULL,
+    product_id BIGINT                      NOT NULL,
+    quantity   INTEGER                     NOT NULL,
+    expires_at TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_stock_reservation_expires_at ON stock_reservation (expires_at);
+CREATE INDEX IF NOT EXISTS idx_stock_reservation_order_id ON stock_reservation (order_id);
@@ -0,0 +1,8 @@
+-- GET /v1/search : l'expression doit rester identique à celle de ProductSearchRepositoryImpl
+CREATE INDEX IF NOT EXISTS idx_product_search
+    ON product USING gin (to_tsvector('french', coalesce(name, '') || ' ' || coalesce(description, '')));
+
+-- Pagination par clé (tri, id) : chaque page est un parcours d'index borné
+CREATE INDEX IF NOT EXISTS idx_product_price_id ON product (price, id);
+CREATE INDEX IF NOT EXISTS idx_product_name_id ON product (name, id);
+CREATE INDEX IF NOT EXISTS idx_product_color_price_id ON product (color, price, id);
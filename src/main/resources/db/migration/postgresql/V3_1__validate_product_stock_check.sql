@@ -0,0 +1,2 @@
+-- Migration séparée : VALIDATE ne prend qu'un verrou SHARE UPDATE EXCLUSIVE, les écritures continuent pendant le parcours
+ALTER TABLE product VALIDATE CONSTRAINT chk_product_stock_non_negative;
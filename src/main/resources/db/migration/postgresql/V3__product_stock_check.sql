@@ -0,0 +1,16 @@
+-- Dernier rempart contre la survente : aucun chemin d'écriture ne doit descendre sous zéro
+
+-- Trace des surventes passées : le stock négatif est conservé avant d'être remis à zéro
+CREATE TABLE product_stock_correction (
+    product_id     BIGINT                      NOT NULL,
+    previous_stock INTEGER                     NOT NULL,
+    corrected_at   TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
+INSERT INTO product_stock_correction (product_id, previous_stock, corrected_at)
+SELECT id, stock, now() FROM product WHERE stock < 0;
+UPDATE product SET stock = 0 WHERE stock < 0;
+
+-- NOT VALID : seules les nouvelles écritures sont vérifiées, les lignes existantes le sont par V3_1.
+-- Flyway exécute chaque migration dans sa propre transaction : le verrou exclusif pris ici est relâché
+-- avant le parcours de la table.
+ALTER TABLE product ADD CONSTRAINT chk_product_stock_non_negative CHECK (stock >= 0) NOT VALID;
@@ -0,0 +1,2 @@
+-- Last-Modified des lectures HTTP ; now() est évalué une fois, l'ajout ne réécrit pas la table
+ALTER TABLE product ADD COLUMN updated_at TIMESTAMP(6) WITH TIME ZONE NOT NULL DEFAULT now();
@@ -0,0 +1,17 @@
+-- Flux de modifications (GET /v1/changes) : change_seq est attribué juste avant le commit
+CREATE SEQUENCE product_change_seq;
+
+ALTER TABLE product ADD COLUMN change_seq BIGINT;
+UPDATE product SET change_seq = nextval('product_change_seq');
+ALTER TABLE product ALTER COLUMN change_seq SET DEFAULT nextval('product_change_seq');
+ALTER TABLE product ALTER COLUMN change_seq SET NOT NULL;
+CREATE INDEX idx_product_change_seq ON product (change_seq);
+
+-- Produits supprimés, pour que les consommateurs les retirent aussi
+CREATE TABLE product_tombstone (
+    product_id BIGINT                      NOT NULL PRIMARY KEY,
+    change_seq BIGINT                      NOT NULL,
+    deleted_at TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
+CREATE INDEX idx_product_tombstone_change_seq ON product_tombstone (change_seq);
+CREATE INDEX idx_product_tombstone_deleted_at ON product_tombstone (deleted_at);
@@ -0,0 +1,5 @@
+-- Battement écrit sur le primaire par chaque instance, relu sur le réplica pour mesurer son retard
+CREATE TABLE replica_heartbeat (
+    instance_id VARCHAR(36)                 NOT NULL PRIMARY KEY,
+    beat_at     TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
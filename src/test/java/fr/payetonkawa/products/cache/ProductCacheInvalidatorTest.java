@@ -0,0 +1,86 @@
+package fr.payetonkawa.products.cache;
+
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.datasource.ReplicaLagMonitor;
+import fr.payetonkawa.products.dto.ProductDto;
+import fr.payetonkawa.products.event.EventPublisher;
+import fr.payetonkawa.products.event.ProductsChangedEvent;
+import fr.payetonkawa.products.messaging.ExchangeQueues;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ProductCacheInvalidatorTest {
+
+    private ProductCache productCache;
+    private EventPublisher eventPublisher;
+    private ReplicaLagMonitor replicaLagMonitor;
+    private ProductCacheInvalidator invalidator;
+
+    @BeforeEach
+    void setUp() {
+        productCache = new ProductCache(new ProductsProperties());
+        eventPublisher = mock(EventPublisher.class);
+        replicaLagMonitor = mock(ReplicaLagMonitor.class);
+        // Sans réplica : pas de moniteur de retard
+        invalidator = new ProductCacheInvalidator(productCache, eventPublisher,
+                new StaticListableBeanFactory().getBeanProvider(ReplicaLagMonitor.class));
+        productCache.get(1L, id -> Optional.of(ProductDto.builder().id(id).build()));
+        productCache.get(2L, id -> Optional.of(ProductDto.builder().id(id).build()));
+    }
+
+    @Test
+    void testLocalChangeEvictsWithoutContactingTheBroker() {
+        invalidator.onProductsChanged(new ProductsChangedEvent(List.of(1L)));
+
+        assertNull(productCache.getNativeCache().getIfPresent(1L));
+        assertNotNull(productCache.getNativeCache().getIfPresent(2L));
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void testBroadcastIsQueuedInTheOutbox() {
+        invalidator.broadcast(new ProductsChangedEvent(List.of(1L)));
+
+        verify(eventPublisher).enqueue(eq(ExchangeQueues.PRODUCT_UPDATED_ROUTING_KEY), argThat(msg ->
+                ((Map<?, ?>) msg.getPayload()).get("productIds").equals(List.of(1L))
+        ));
+        verify(eventPublisher, never()).sendEvent(any(), any());
+        assertNotNull(productCache.getNativeCache().getIfPresent(1L));
+    }
+
+    @Test
+    void testChangeIsEvictedAgainOnceTheReplicaCaughtUp() {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory(Map.of("replicaLagMonitor", replicaLagMonitor));
+        invalidator = new ProductCacheInvalidator(productCache, eventPublisher,
+                beanFactory.getBeanProvider(ReplicaLagMonitor.class));
+        ArgumentCaptor<Runnable> reEviction = ArgumentCaptor.forClass(Runnable.class);
+
+        invalidator.onProductsChanged(new ProductsChangedEvent(List.of(1L)));
+        verify(replicaLagMonitor).afterReplicaCatchUp(reEviction.capture());
+        // Relu sur un réplica encore en retard
+        productCache.get(1L, id -> Optional.of(ProductDto.builder().id(id).name("stale").build()));
+        reEviction.getValue().run();
+
+        assertNull(productCache.getNativeCache().getIfPresent(1L));
+    }
+
+    @Test
+    void testRemoteBroadcastEvicts() throws Exception {
+        invalidator.handleProductUpdated(new Message(
+                "{\"routingKey\":\"product.updated\",\"payload\":{\"productIds\":[1,2]}}".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(0, productCache.getNativeCache().estimatedSize());
+        verifyNoInteractions(eventPublisher);
+    }
+}
@@ -0,0 +1,300 @@
+package fr.payetonkawa.products.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.payetonkawa.products.dto.BatchItemResult;
+import fr.payetonkawa.products.dto.ProductChange;
+import fr.payetonkawa.products.dto.ProductChangePage;
+import fr.payetonkawa.products.dto.ProductDto;
+import fr.payetonkawa.products.dto.ProductPage;
+import fr.payetonkawa.products.dto.ProductSearch;
+import fr.payetonkawa.products.dto.ProductSearchPage;
+import fr.payetonkawa.products.dto.ProductVersion;
+import fr.payetonkawa.products.exception.StockNotOwnedException;
+import fr.payetonkawa.products.service.ProductChangeFeed;
+import fr.payetonkawa.products.service.ProductService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class ProductControllerTest {
+
+    private ProductService productService;
+    private ProductChangeFeed productChangeFeed;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        productService = mock(ProductService.class);
+        productChangeFeed = mock(ProductChangeFeed.class);
+        mockMvc = MockMvcBuilders
+                .standaloneSetup(new ProductController(productService, productChangeFeed, new ObjectMapper()))
+                .build();
+    }
+
+    private ProductDto product(long id) {
+        return ProductDto.builder().id(id).name("Product " + id).price(10.0).stock(1).build();
+    }
+
+    @Test
+    void testGetAllProductsReturnsPageAndCursor() throws Exception {
+        when(productService.getProducts(5L, 2)).thenReturn(new ProductPage(List.of(product(6), product(7)), 7L));
+
+        mockMvc.perform(get("/v1").param("after", "5").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ProductController.NEXT_CURSOR_HEADER, "7"))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(6));
+    }
+
+    @Test
+    void testGetAllProductsLastPageHasNoCursor() throws Exception {
+        when(productService.getProducts(3L, ProductService.DEFAULT_PAGE_SIZE))
+                .thenReturn(new ProductPage(List.of(product(4)), null));
+
+        mockMvc.perform(get("/v1").param("after", "3"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(ProductController.NEXT_CURSOR_HEADER))
+                .andExpect(jsonPath("$[0].id").value(4));
+    }
+
+    @Test
+    void testGetAllProductsWithoutPagingParametersReturnsWholeCatalog() throws Exception {
+        when(productService.getAllProducts()).thenReturn(new ProductPage(List.of(product(1), product(2)), null));
+
+        mockMvc.perform(get("/v1"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(ProductController.NEXT_CURSOR_HEADER))
+                .andExpect(jsonPath("$.length()").value(2));
+        verify(productService, never()).getProducts(any(), anyInt());
+    }
+
+    @Test
+    void testSearchProductsPassesCriteriaAndReturnsCursor() throws Exception {
+        String after = new ProductSearch.Cursor("12.5", 4L).encode();
+        when(productService.searchProducts(argThat(search -> "café".equals(search.getText())
+                && "red".equals(search.getColor())
+                && search.getMinPrice() == 5.0 && search.getMaxPrice() == null
+                && search.getSort() == ProductSearch.Sort.PRICE_DESC
+                && search.getAfter().equals(new ProductSearch.Cursor("12.5", 4L))
+                && search.getLimit() == 2)))
+                .thenReturn(new ProductSearchPage(List.of(product(3), product(7)), "next"));
+
+        mockMvc.perform(get("/v1/search").param("q", "café").param("color", "red").param("minPrice", "5")
+                        .param("sort", "-price").param("after", after).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ProductController.NEXT_CURSOR_HEADER, "next"))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].id").value(7));
+    }
+
+    @Test
+    void testSearchProductsRejectsUnknownSort() throws Exception {
+        mockMvc.perform(get("/v1/search").param("sort", "stock"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(productService);
+    }
+
+    @Test
+    void testSearchProductsRejectsInvalidCursor() throws Exception {
+        mockMvc.perform(get("/v1/search").param("after", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(productService);
+    }
+
+    private static final Instant UPDATED_AT = Instant.parse("2026-03-02T10:15:30Z");
+
+    private ProductDto versionedProduct(long id, long version) {
+        ProductDto product = product(id);
+        product.setVersion(version);
+        product.setUpdatedAt(UPDATED_AT);
+        return product;
+    }
+
+    @Test
+    void testGetProductSendsValidators() throws Exception {
+        when(productService.getProductById(4L)).thenReturn(Optional.of(versionedProduct(4, 7)));
+
+        mockMvc.perform(get("/v1/4"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4-7\""))
+                .andExpect(header().string(HttpHeaders.LAST_MODIFIED, "Mon, 02 Mar 2026 10:15:30 GMT"))
+                .andExpect(jsonPath("$.id").value(4))
+                .andExpect(jsonPath("$.version").doesNotExist());
+        verify(productService, never()).getProductVersion(any());
+    }
+
+    @Test
+    void testGetProductNotModifiedDoesNotLoadProduct() throws Exception {
+        when(productService.getProductVersion(4L)).thenReturn(Optional.of(new ProductVersion(4L, 7, UPDATED_AT)));
+
+        mockMvc.perform(get("/v1/4").header(HttpHeaders.IF_NONE_MATCH, "\"4-7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4-7\""))
+                .andExpect(content().string(""));
+        verify(productService, never()).getProductById(any());
+    }
+
+    @Test
+    void testGetProductChangedSinceReturnsBody() throws Exception {
+        when(productService.getProductVersion(4L)).thenReturn(Optional.of(new ProductVersion(4L, 8, UPDATED_AT)));
+        when(productService.getProductById(4L)).thenReturn(Optional.of(versionedProduct(4, 8)));
+
+        mockMvc.perform(get("/v1/4").header(HttpHeaders.IF_NONE_MATCH, "\"4-7\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4-8\""));
+    }
+
+    @Test
+    void testGetProductNotModifiedSinceDate() throws Exception {
+        when(productService.getProductVersion(4L)).thenReturn(Optional.of(new ProductVersion(4L, 7, UPDATED_AT)));
+
+        mockMvc.perform(get("/v1/4").header(HttpHeaders.IF_MODIFIED_SINCE, "Mon, 02 Mar 2026 10:15:30 GMT"))
+                .andExpect(status().isNotModified());
+        verify(productService, never()).getProductById(any());
+    }
+
+    @Test
+    void testGetAllProductsRevalidatesWithWeakEtag() throws Exception {
+        when(productService.getAllProducts())
+                .thenReturn(new ProductPage(List.of(versionedProduct(1, 1), versionedProduct(2, 5)), null));
+
+        String etag = mockMvc.perform(get("/v1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.LAST_MODIFIED, "Mon, 02 Mar 2026 10:15:30 GMT"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertTrue(etag.startsWith("W/\""));
+
+        mockMvc.perform(get("/v1").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        when(productService.getAllProducts())
+                .thenReturn(new ProductPage(List.of(versionedProduct(1, 1), versionedProduct(2, 6)), null));
+        mockMvc.perform(get("/v1").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void testGetChangesReturnsUpdatesTombstonesAndCursor() throws Exception {
+        when(productChangeFeed.getChanges(40L, 2)).thenReturn(new ProductChangePage(List.of(
+                new ProductChange(41L, 3L, false, product(3)),
+                new ProductChange(42L, 5L, true, null)), 42L));
+
+        mockMvc.perform(get("/v1/changes").param("since", "40").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ProductController.NEXT_CURSOR_HEADER, "42"))
+                .andExpect(jsonPath("$[0].product.name").value("Product 3"))
+                .andExpect(jsonPath("$[1].id").value(5))
+                .andExpect(jsonPath("$[1].deleted").value(true))
+                .andExpect(jsonPath("$[1].product").doesNotExist());
+    }
+
+    @Test
+    void testGetChangesWithoutNewChangesKeepsCursor() throws Exception {
+        when(productChangeFeed.getChanges(0L, ProductService.DEFAULT_PAGE_SIZE)).thenReturn(new ProductChangePage(List.of(), 0L));
+
+        mockMvc.perform(get("/v1/changes"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ProductController.NEXT_CURSOR_HEADER, "0"))
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+
+    @Test
+    void testGetProductsByIds() throws Exception {
+        when(productService.getProductsByIds(List.of(1L, 2L, 3L))).thenReturn(List.of(product(1), product(3)));
+
+        mockMvc.perform(get("/v1").param("ids", "1,2,3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].id").value(3));
+        verify(productService, never()).getProducts(any(), anyInt());
+    }
+
+    @Test
+    void testCreateProductsBatch() throws Exception {
+        when(productService.createProducts(anyList())).thenReturn(List.of(
+                BatchItemResult.succeeded(0, product(1)),
+                BatchItemResult.failed(1, null, "Product name, description and price must be provided, stock cannot be negative")
+        ));
+
+        mockMvc.perform(post("/v1/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"name\":\"A\",\"price\":1.0},{\"price\":1.0}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].success").value(true))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[1].success").value(false))
+                .andExpect(jsonPath("$[1].index").value(1));
+    }
+
+    @Test
+    void testUpdateProductsBatch() throws Exception {
+        when(productService.updateProducts(anyList())).thenReturn(List.of(BatchItemResult.failed(0, 9L, "Product not found")));
+
+        mockMvc.perform(patch("/v1/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":9,\"name\":\"A\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].error").value("Product not found"));
+        verify(productService, never()).updateProduct(any(), any());
+    }
+
+    @Test
+    void testUpdateProductStockOnNonConsumerInstanceIsAConflict() throws Exception {
+        when(productService.updateProduct(eq(1L), any())).thenThrow(new StockNotOwnedException("not here"));
+
+        mockMvc.perform(patch("/v1/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"stock\":5}"))
+                .andExpect(status().isConflict())
+                .andExpect(content().string("not here"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testStreamAllProductsWritesNdjson() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<ProductDto> consumer = invocation.getArgument(0);
+            consumer.accept(product(1));
+            consumer.accept(product(2));
+            return null;
+        }).when(productService).streamAllProducts(any(Consumer.class));
+
+        MvcResult result = mockMvc.perform(get("/v1").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"id\":1,"));
+        assertTrue(lines[1].startsWith("{\"id\":2,"));
+        verify(productService, never()).getProducts(any(), anyInt());
+    }
+}
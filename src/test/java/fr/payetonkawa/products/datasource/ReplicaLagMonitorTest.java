@@ -0,0 +1,150 @@
+package fr.payetonkawa.products.datasource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReplicaLagMonitorTest {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+    private TaskScheduler taskScheduler;
+    private ReplicaLagMonitor monitor;
+
+    // Même schéma que l'application, une base neuve par test
+    private static DataSource migratedDatabase() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:lag-" + DATABASES.incrementAndGet() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/h2").load().migrate();
+        return dataSource;
+    }
+
+    private void insertProduct(Instant updatedAt) {
+        for (JdbcTemplate jdbc : new JdbcTemplate[]{primary, replica}) {
+            jdbc.update("insert into product (id, name, price, description, stock, updated_at, change_seq) "
+                    + "values (1, 'Café', 1.0, 'd', 1, ?, 1)", Timestamp.from(updatedAt));
+        }
+    }
+
+    // Réplication simulée : le réplica reçoit l'état courant des battements du primaire
+    private void replicate() {
+        replica.update("delete from replica_heartbeat");
+        primary.queryForList("select instance_id, beat_at from replica_heartbeat").forEach(row ->
+                replica.update("insert into replica_heartbeat (instance_id, beat_at) values (?, ?)",
+                        row.get("instance_id"), row.get("beat_at")));
+    }
+
+    @BeforeEach
+    void setUp() {
+        DataSource primaryDataSource = migratedDatabase();
+        DataSource replicaDataSource = migratedDatabase();
+        primary = new JdbcTemplate(primaryDataSource);
+        replica = new JdbcTemplate(replicaDataSource);
+        taskScheduler = mock(TaskScheduler.class);
+        monitor = new ReplicaLagMonitor(primaryDataSource, replicaDataSource, taskScheduler,
+                Duration.ofSeconds(5), Duration.ofSeconds(1));
+    }
+
+    @Test
+    void testUnmeasuredReplicaIsNotUsed() {
+        assertFalse(monitor.isReplicaUsable());
+    }
+
+    @Test
+    void testReplicaIsUsedOnceItReplayedTheLastBeat() {
+        monitor.check();
+        // Premier battement pas encore rejoué : retard inconnu
+        assertFalse(monitor.isReplicaUsable());
+
+        replicate();
+        monitor.check();
+
+        assertTrue(monitor.isReplicaUsable());
+    }
+
+    @Test
+    void testIdlePrimaryIsNotSeenAsLag() {
+        insertProduct(Instant.now().minus(Duration.ofHours(1)));
+        monitor.check();
+        replicate();
+
+        monitor.check();
+
+        assertTrue(monitor.isReplicaUsable());
+    }
+
+    @Test
+    void testFrequentWritesDoNotHideAReplicaBehind() {
+        insertProduct(Instant.now());
+        monitor.check();
+        replicate();
+        monitor.check();
+        assertTrue(monitor.isReplicaUsable());
+
+        // Le réplica reste bloqué sur un battement vieux de 10 s pendant qu'un produit change sans arrêt
+        replica.update("update replica_heartbeat set beat_at = ?", Timestamp.from(Instant.now().minusSeconds(10)));
+        for (int i = 0; i < 10; i++) {
+            primary.update("update product set stock = stock + 1, updated_at = ?, change_seq = change_seq + 1",
+                    Timestamp.from(Instant.now()));
+        }
+        monitor.check();
+        assertFalse(monitor.isReplicaUsable());
+
+        replicate();
+        monitor.check();
+        assertTrue(monitor.isReplicaUsable());
+    }
+
+    @Test
+    void testUnreachableReplicaIsNotUsedAndReportsNaN() {
+        monitor.check();
+        replicate();
+        monitor.check();
+        assertTrue(monitor.isReplicaUsable());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        monitor.bindTo(registry);
+        assertEquals(0.0, registry.get("products.replica.lag").gauge().value());
+
+        replica.execute("drop table replica_heartbeat");
+        monitor.check();
+
+        assertFalse(monitor.isReplicaUsable());
+        assertTrue(Double.isNaN(registry.get("products.replica.lag").gauge().value()));
+    }
+
+    @Test
+    void testBeatsOfStoppedInstancesArePurged() {
+        primary.update("insert into replica_heartbeat (instance_id, beat_at) values ('gone', ?)",
+                Timestamp.from(Instant.now().minus(Duration.ofDays(2))));
+
+        monitor.check();
+
+        assertEquals(1, primary.queryForObject("select count(*) from replica_heartbeat", Integer.class));
+    }
+
+    @Test
+    void testActionIsReplayedAfterTheMaximumLagAndOneCheck() {
+        Runnable action = () -> { };
+        Instant before = Instant.now();
+
+        monitor.afterReplicaCatchUp(action);
+
+        verify(taskScheduler).schedule(eq(action), argThat((Instant at) ->
+                !at.isBefore(before.plusSeconds(6)) && at.isBefore(before.plusSeconds(7))));
+    }
+}
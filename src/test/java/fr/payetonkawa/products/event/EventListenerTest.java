@@ -1,17 +1,29 @@
 package fr.payetonkawa.products.event;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.payetonkawa.products.dto.StockReservationResult;
 import fr.payetonkawa.products.messaging.ExchangeMessage;
 import fr.payetonkawa.products.messaging.ExchangeQueues;
-import fr.payetonkawa.products.repository.ProductRepository;
+import fr.payetonkawa.products.messaging.OrderLine;
 import fr.payetonkawa.products.service.ProductService;
+import fr.payetonkawa.products.service.StockReservationService;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import fr.payetonkawa.products.util.LongIntMap;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageProperties;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,25 +32,33 @@ class EventListenerTest {
     @Mock
     private ProductService productService;
     @Mock
-    private ProductRepository productRepository;
-    @Mock
     private EventPublisher eventPublisher;
+    @Mock
+    private ProcessedEventLedger processedEventLedger;
+    @Mock
+    private StockReservationService stockReservationService;
 
     @InjectMocks
     private EventListener eventListener;
 
     private ObjectMapper objectMapper = new ObjectMapper();
+    private SimpleMeterRegistry meterRegistry;
+    private EventMetrics eventMetrics;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        eventListener = new EventListener(productService, productRepository, eventPublisher);
+        meterRegistry = new SimpleMeterRegistry();
+        eventMetrics = new EventMetrics(meterRegistry);
+        when(processedEventLedger.markProcessed(any())).thenReturn(true);
+        eventListener = new EventListener(productService, eventPublisher,
+                new OrderedEventDispatcher(0, 1, Duration.ZERO), TransactionOperations.withoutTransaction(), processedEventLedger, eventMetrics, stockReservationService);
     }
 
-    private Message mockAmqpMessage(String routingKey) {
+    private Message mockAmqpMessage(String routingKey, String body) {
         MessageProperties props = new MessageProperties();
         props.setReceivedRoutingKey(routingKey);
-        return new Message("{}".getBytes(StandardCharsets.UTF_8), props);
+        return new Message(body.getBytes(StandardCharsets.UTF_8), props);
     }
 
     @Test
@@ -47,36 +67,158 @@ class EventListenerTest {
         List<Map<String, Object>> items = List.of(Map.of("itemId", 1L, "quantity", 2));
         Map<String, Object> payload = Map.of("orderId", 42L, "items", items);
         String message = objectMapper.writeValueAsString(Map.of("payload", payload));
-        Message amqpMessage = mockAmqpMessage(routingKey);
+        Message amqpMessage = mockAmqpMessage(routingKey, message);
 
-        when(productService.verifyAndUpdateStock(any())).thenReturn(true);
+        when(productService.verifyAndUpdateStock(any())).thenReturn(StockReservationResult.confirmed());
 
-        eventListener.handleEvent(message, amqpMessage);
+        eventListener.handleEvent(amqpMessage);
 
-        verify(productService).verifyAndUpdateStock(any());
-        verify(eventPublisher).sendEvent(eq("product.stock.confirmed"), argThat(msg ->
+        verify(productService).verifyAndUpdateStock(List.of(new OrderLine(1L, 2)));
+        verify(eventPublisher).enqueue(eq("product.stock.confirmed"), argThat(msg ->
                 ((Map<?, ?>) msg.getPayload()).get("orderId").equals(42L)
         ));
     }
 
+    @Test
+    void testHandleOrderCreated_holdsReservationWhenTtlEnabled() throws Exception {
+        List<Map<String, Object>> items = List.of(Map.of("itemId", 1L, "quantity", 2));
+        String message = objectMapper.writeValueAsString(Map.of("payload", Map.of("orderId", 42L, "items", items)));
+        when(stockReservationService.isEnabled()).thenReturn(true);
+        when(productService.verifyAndUpdateStock(any())).thenReturn(StockReservationResult.confirmed());
+
+        eventListener.handleEvent(mockAmqpMessage("order.created", message));
+
+        verify(stockReservationService).hold(42L, List.of(new OrderLine(1L, 2)));
+        verify(eventPublisher).enqueue(eq("product.stock.confirmed"), any());
+    }
+
+    @Test
+    void testHandleOrderCancelled_restoresOnlyWhatIsStillHeld() throws Exception {
+        List<Map<String, Object>> items = List.of(Map.of("itemId", 1L, "quantity", 2), Map.of("itemId", 2L, "quantity", 1));
+        String message = objectMapper.writeValueAsString(Map.of("payload", Map.of("orderId", 45L, "items", items)));
+        when(stockReservationService.isEnabled()).thenReturn(true);
+        when(stockReservationService.release(45L)).thenReturn(LongIntMap.copyOf(Map.of(1L, 2)));
+
+        eventListener.handleEvent(mockAmqpMessage("order.cancelled", message));
+
+        verify(productService).restoreStock(1L, 2);
+        verify(productService, never()).restoreStock(eq(2L), anyInt());
+    }
+
+    @Test
+    void testHandleOrderCancelled_afterExpiryRestoresNothing() throws Exception {
+        List<Map<String, Object>> items = List.of(Map.of("itemId", 1L, "quantity", 2));
+        String message = objectMapper.writeValueAsString(Map.of("payload", Map.of("orderId", 45L, "items", items)));
+        when(stockReservationService.isEnabled()).thenReturn(true);
+        when(stockReservationService.release(45L)).thenReturn(LongIntMap.copyOf(Map.of()));
+
+        eventListener.handleEvent(mockAmqpMessage("order.cancelled", message));
+
+        verify(productService, never()).restoreStock(any(), anyInt());
+    }
+
+    @Test
+    void testHandleOrderCompleted_consumesReservation() throws Exception {
+        String message = objectMapper.writeValueAsString(Map.of("payload", Map.of("orderId", 49L)));
+        when(stockReservationService.isEnabled()).thenReturn(true);
+
+        eventListener.handleEvent(mockAmqpMessage("order.completed", message));
+
+        verify(stockReservationService).release(49L);
+        verifyNoInteractions(productService, eventPublisher);
+    }
+
+    @Test
+    void testHandleOrderUpdated_usesHeldQuantitiesWhenTtlEnabled() throws Exception {
+        Map<String, Object> payload = Map.of(
+                "orderId", 46L,
+                "previousItems", List.of(Map.of("itemId", 1L, "quantity", 2)),
+                "items", List.of(Map.of("itemId", 1L, "quantity", 3)));
+        String message = objectMapper.writeValueAsString(Map.of("payload", payload));
+        when(stockReservationService.isEnabled()).thenReturn(true);
+        // Réservation expirée : la commande ne détient plus rien, tout est à réserver de nouveau
+        when(stockReservationService.held(46L)).thenReturn(LongIntMap.copyOf(Map.of()));
+        when(productService.adjustStock(any())).thenReturn(StockReservationResult.confirmed());
+
+        eventListener.handleEvent(mockAmqpMessage("order.updated", message));
+
+        verify(productService).adjustStock(LongIntMap.copyOf(Map.of(1L, 3)));
+        verify(stockReservationService).replace(46L, List.of(new OrderLine(1L, 3)));
+    }
+
     @Test
     void testHandleOrderCreated_stockInsufficient() throws Exception {
         String routingKey = "order.created";
         List<Map<String, Object>> items = List.of(Map.of("itemId", 1L, "quantity", 2));
         Map<String, Object> payload = Map.of("orderId", 43L, "items", items);
         String message = objectMapper.writeValueAsString(Map.of("payload", payload));
-        Message amqpMessage = mockAmqpMessage(routingKey);
+        Message amqpMessage = mockAmqpMessage(routingKey, message);
 
-        when(productService.verifyAndUpdateStock(any())).thenReturn(false);
+        when(productService.verifyAndUpdateStock(any())).thenReturn(StockReservationResult.rejected(List.of(1L)));
 
-        eventListener.handleEvent(message, amqpMessage);
+        eventListener.handleEvent(amqpMessage);
 
         verify(productService).verifyAndUpdateStock(any());
-        verify(eventPublisher).sendEvent(eq("product.stock.insufficient"), argThat(msg ->
+        verify(eventPublisher).enqueue(eq("product.stock.insufficient"), argThat(msg ->
                 ((Map<?, ?>) msg.getPayload()).get("orderId").equals(43L)
+                        && ((Map<?, ?>) msg.getPayload()).get("failedItemIds").equals(List.of(1L))
         ));
     }
 
+    @Test
+    void testHandleOrderCreated_rollsBackStockAndOutboxTogether() throws Exception {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        TransactionStatus status = mock(TransactionStatus.class);
+        when(transactionManager.getTransaction(any())).thenReturn(status);
+        EventListener transactional = new EventListener(productService, eventPublisher,
+                new OrderedEventDispatcher(0, 1, Duration.ZERO), new TransactionTemplate(transactionManager), processedEventLedger, eventMetrics, stockReservationService);
+        List<Map<String, Object>> items = List.of(Map.of("itemId", 1L, "quantity", 2));
+        String message = objectMapper.writeValueAsString(Map.of("payload", Map.of("orderId", 44L, "items", items)));
+
+        when(productService.verifyAndUpdateStock(any())).thenReturn(StockReservationResult.confirmed());
+        doThrow(new IllegalStateException("outbox down")).when(eventPublisher).enqueue(any(), any());
+
+        assertThrows(IllegalStateException.class,
+                () -> transactional.handleEvent(mockAmqpMessage("order.created", message)));
+        verify(transactionManager).rollback(status);
+        verify(transactionManager, never()).commit(any());
+    }
+
+    @Test
+    void testHandleOrderCreated_redeliveryIsSkipped() throws Exception {
+        List<Map<String, Object>> items = List.of(Map.of("itemId", 1L, "quantity", 2));
+        String message = objectMapper.writeValueAsString(Map.of(
+                "correlationId", "c-45", "payload", Map.of("orderId", 45L, "items", items)));
+        when(processedEventLedger.markProcessed("order.created:c-45")).thenReturn(true, false);
+        when(productService.verifyAndUpdateStock(any())).thenReturn(StockReservationResult.confirmed());
+
+        eventListener.handleEvent(mockAmqpMessage("order.created", message));
+        eventListener.handleEvent(mockAmqpMessage("order.created", message));
+
+        verify(productService, times(1)).verifyAndUpdateStock(any());
+        verify(eventPublisher, times(1)).enqueue(eq("product.stock.confirmed"), any());
+        assertEquals(1.0, meterRegistry.get("products.events.duplicates").counter().count());
+    }
+
+    @Test
+    void testHandleEvent_recordsStageTimersOutcomeAndLag() throws Exception {
+        List<Map<String, Object>> items = List.of(Map.of("itemId", 1L, "quantity", 2));
+        String message = objectMapper.writeValueAsString(Map.of("payload", Map.of("orderId", 46L, "items", items)));
+        Message amqpMessage = mockAmqpMessage("order.created", message);
+        amqpMessage.getMessageProperties().setTimestamp(new Date(System.currentTimeMillis() - 1500));
+        when(productService.verifyAndUpdateStock(any())).thenReturn(StockReservationResult.rejected(List.of(1L)));
+
+        eventListener.handleEvent(amqpMessage);
+
+        assertEquals(1, meterRegistry.get("products.events.stage")
+                .tags("routing.key", "order.created", "stage", "decode").timer().count());
+        assertEquals(1, meterRegistry.get("products.events.stage")
+                .tags("routing.key", "order.created", "stage", "transaction").timer().count());
+        assertEquals(1.0, meterRegistry.get("products.stock.reservations").tag("outcome", "insufficient").counter().count());
+        assertEquals(0.0, meterRegistry.get("products.stock.reservations").tag("outcome", "confirmed").counter().count());
+        assertTrue(meterRegistry.get("products.events.lag").timer().totalTime(TimeUnit.MILLISECONDS) >= 1500);
+    }
+
     @Test
     void testHandleOrderDeleted() throws Exception {
         String routingKey = "order.deleted";
@@ -86,15 +228,28 @@ class EventListenerTest {
         );
         Map<String, Object> payload = Map.of("orderId", 44L, "items", items);
         String message = objectMapper.writeValueAsString(Map.of("payload", payload));
-        Message amqpMessage = mockAmqpMessage(routingKey);
+        Message amqpMessage = mockAmqpMessage(routingKey, message);
 
-        eventListener.handleEvent(message, amqpMessage);
+        eventListener.handleEvent(amqpMessage);
 
         verify(productService).restoreStock(1L, 2);
         verify(productService).restoreStock(2L, 3);
         verifyNoMoreInteractions(eventPublisher);
     }
 
+    @Test
+    void testHandleOrderDeleted_repeatedLinesAreRestoredOnce() throws Exception {
+        List<Map<String, Object>> items = List.of(Map.of("itemId", 1L, "quantity", 2),
+                Map.of("itemId", 2L, "quantity", 1), Map.of("itemId", 1L, "quantity", 3));
+        String message = objectMapper.writeValueAsString(Map.of("payload", Map.of("orderId", 44L, "items", items)));
+
+        eventListener.handleEvent(mockAmqpMessage("order.deleted", message));
+
+        verify(productService).restoreStock(1L, 5);
+        verify(productService).restoreStock(2L, 1);
+        verify(productService, times(2)).restoreStock(anyLong(), anyInt());
+    }
+
     @Test
     void testHandleOrderCancelled() throws Exception {
         String routingKey = "order.cancelled";
@@ -103,9 +258,9 @@ class EventListenerTest {
         );
         Map<String, Object> payload = Map.of("orderId", 45L, "items", items);
         String message = objectMapper.writeValueAsString(Map.of("payload", payload));
-        Message amqpMessage = mockAmqpMessage(routingKey);
+        Message amqpMessage = mockAmqpMessage(routingKey, message);
 
-        eventListener.handleEvent(message, amqpMessage);
+        eventListener.handleEvent(amqpMessage);
 
         verify(productService).restoreStock(5L, 1);
         verifyNoMoreInteractions(eventPublisher);
@@ -115,7 +270,8 @@ class EventListenerTest {
     void testHandleOrderUpdated_stockConfirmed() throws Exception {
         String routingKey = "order.updated";
         List<Map<String, Object>> previousItems = List.of(
-                Map.of("itemId", 1L, "quantity", 2)
+                Map.of("itemId", 1L, "quantity", 2),
+                Map.of("itemId", 2L, "quantity", 1)
         );
         List<Map<String, Object>> newItems = List.of(
                 Map.of("itemId", 1L, "quantity", 3)
@@ -126,18 +282,43 @@ class EventListenerTest {
                 "items", newItems
         );
         String message = objectMapper.writeValueAsString(Map.of("payload", payload));
-        Message amqpMessage = mockAmqpMessage(routingKey);
+        Message amqpMessage = mockAmqpMessage(routingKey, message);
+
+        when(productService.adjustStock(any())).thenReturn(StockReservationResult.confirmed());
+
+        eventListener.handleEvent(amqpMessage);
+
+        verify(productService).adjustStock(LongIntMap.copyOf(Map.of(1L, 1, 2L, -1)));
+        verify(eventPublisher).enqueue(eq("product.stock.confirmed"), any());
+    }
+
+    @Test
+    void testHandleOrderUpdated_identicalUpdatesWithoutIdsAreAllApplied() throws Exception {
+        Map<String, Object> payload = Map.of(
+                "orderId", 47L,
+                "previousItems", List.of(Map.of("itemId", 1L, "quantity", 1)),
+                "items", List.of(Map.of("itemId", 1L, "quantity", 2)));
+        String message = objectMapper.writeValueAsString(Map.of("payload", payload));
+        when(productService.adjustStock(any())).thenReturn(StockReservationResult.confirmed());
+
+        // 1 -> 2, puis 2 -> 1 (non montré), puis de nouveau 1 -> 2 : même corps, deux modifications réelles
+        eventListener.handleEvent(mockAmqpMessage("order.updated", message));
+        eventListener.handleEvent(mockAmqpMessage("order.updated", message));
+
+        verify(productService, times(2)).adjustStock(LongIntMap.copyOf(Map.of(1L, 1)));
+        verify(processedEventLedger, times(2)).markProcessed(null);
+    }
 
-        var product = mock(fr.payetonkawa.products.entity.Product.class);
-        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
-        when(product.getStock()).thenReturn(10);
+    @Test
+    void testHandleOrderUpdated_deduplicatedOnMessageId() throws Exception {
+        Map<String, Object> payload = Map.of("orderId", 48L, "previousItems", List.of(), "items", List.of());
+        Message amqpMessage = mockAmqpMessage("order.updated", objectMapper.writeValueAsString(Map.of("payload", payload)));
+        amqpMessage.getMessageProperties().setMessageId("m-48");
+        when(processedEventLedger.markProcessed("order.updated:message:m-48")).thenReturn(false);
 
-        eventListener.handleEvent(message, amqpMessage);
+        eventListener.handleEvent(amqpMessage);
 
-        verify(productRepository, times(2)).findById(1L);
-        verify(product).setStock(anyInt());
-        verify(productRepository).save(product);
-        verify(eventPublisher).sendEvent(eq("product.stock.confirmed"), any());
+        verify(productService, never()).adjustStock(any());
     }
 
     @Test
@@ -155,17 +336,196 @@ class EventListenerTest {
                 "items", newItems
         );
         String message = objectMapper.writeValueAsString(Map.of("payload", payload));
-        Message amqpMessage = mockAmqpMessage(routingKey);
+        Message amqpMessage = mockAmqpMessage(routingKey, message);
+
+        when(productService.adjustStock(any())).thenReturn(StockReservationResult.rejected(List.of(1L)));
+
+        eventListener.handleEvent(amqpMessage);
+
+        verify(productService).adjustStock(LongIntMap.copyOf(Map.of(1L, 9)));
+        verify(eventPublisher).enqueue(eq("product.stock.insufficient"), argThat(msg ->
+                ((Map<?, ?>) msg.getPayload()).get("orderId").equals(47L)));
+        verify(eventPublisher, never()).enqueue(eq("product.stock.confirmed"), any());
+    }
+
+    private Message batchMessage(String routingKey, long deliveryTag, Object payload) throws Exception {
+        MessageProperties props = new MessageProperties();
+        props.setReceivedRoutingKey(routingKey);
+        props.setDeliveryTag(deliveryTag);
+        return new Message(objectMapper.writeValueAsBytes(Map.of("payload", payload)), props);
+    }
+
+    private Message createdMessage(long deliveryTag, long orderId, long itemId, int quantity) throws Exception {
+        return batchMessage("order.created", deliveryTag, Map.of("orderId", orderId,
+                "items", List.of(Map.of("itemId", itemId, "quantity", quantity))));
+    }
+
+    @Test
+    void testReceiveBatch_reservesConsecutiveCreationsTogetherAndAcksOnce() throws Exception {
+        Channel channel = mock(Channel.class);
+        when(productService.verifyAndUpdateStockBatch(any())).thenAnswer(invocation ->
+                ((List<?>) invocation.getArgument(0)).stream().map(items -> StockReservationResult.confirmed()).toList());
+        when(productService.verifyAndUpdateStockBatch(List.of(List.of(new OrderLine(3L, 1)))))
+                .thenReturn(List.of(StockReservationResult.rejected(List.of(3L))));
+
+        eventListener.receiveBatch(List.of(
+                createdMessage(1L, 60L, 1L, 2),
+                createdMessage(2L, 61L, 2L, 1),
+                batchMessage("order.cancelled", 3L, Map.of("orderId", 59L,
+                        "items", List.of(Map.of("itemId", 1L, "quantity", 4)))),
+                createdMessage(4L, 62L, 3L, 1)), channel);
+
+        // L'annulation reste entre les deux groupes de créations
+        InOrder inOrder = inOrder(productService);
+        inOrder.verify(productService).verifyAndUpdateStockBatch(List.of(
+                List.of(new OrderLine(1L, 2)), List.of(new OrderLine(2L, 1))));
+        inOrder.verify(productService).restoreStock(1L, 4);
+        inOrder.verify(productService).verifyAndUpdateStockBatch(List.of(List.of(new OrderLine(3L, 1))));
+        verify(productService, never()).verifyAndUpdateStock(any());
+        verify(eventPublisher, times(2)).enqueue(eq("product.stock.confirmed"), any());
+        verify(eventPublisher).enqueue(eq("product.stock.insufficient"), argThat(msg ->
+                ((Map<?, ?>) msg.getPayload()).get("orderId").equals(62L)));
+        verify(channel).basicAck(4L, true);
+        verifyNoMoreInteractions(channel);
+        assertEquals(1, meterRegistry.get("products.events.batch.size").summary().count());
+        assertEquals(4.0, meterRegistry.get("products.events.batch.size").summary().totalAmount());
+    }
+
+    @Test
+    void testReceiveBatch_skipsRedeliveredCreation() throws Exception {
+        Channel channel = mock(Channel.class);
+        when(processedEventLedger.markProcessed("order.created:60")).thenReturn(true, false);
+        when(productService.verifyAndUpdateStockBatch(any())).thenReturn(List.of(StockReservationResult.confirmed()));
+
+        eventListener.receiveBatch(List.of(createdMessage(1L, 60L, 1L, 2), createdMessage(2L, 60L, 1L, 2)), channel);
+
+        verify(productService).verifyAndUpdateStockBatch(List.of(List.of(new OrderLine(1L, 2))));
+        verify(eventPublisher, times(1)).enqueue(eq("product.stock.confirmed"), any());
+        verify(channel).basicAck(2L, true);
+    }
+
+    @Test
+    void testReceiveBatch_failedBatchIsRetriedMessageByMessage() throws Exception {
+        Channel channel = mock(Channel.class);
+        when(productService.verifyAndUpdateStockBatch(any())).thenThrow(new IllegalStateException("deadlock"));
+        when(productService.verifyAndUpdateStock(List.of(new OrderLine(1L, 2)))).thenReturn(StockReservationResult.confirmed());
+        when(productService.verifyAndUpdateStock(List.of(new OrderLine(2L, 1)))).thenThrow(new IllegalStateException("db down"));
+
+        eventListener.receiveBatch(List.of(createdMessage(1L, 60L, 1L, 2), createdMessage(2L, 61L, 2L, 1)), channel);
+
+        verify(channel).basicAck(1L, false);
+        verify(channel).basicNack(2L, false, true);
+        verify(channel, never()).basicAck(anyLong(), eq(true));
+        verify(eventPublisher, times(1)).enqueue(eq("product.stock.confirmed"), any());
+    }
+
+    @Test
+    void testReceiveBatch_undecodableMessageIsRejectedAlone() throws Exception {
+        Channel channel = mock(Channel.class);
+        MessageProperties props = new MessageProperties();
+        props.setReceivedRoutingKey("order.created");
+        props.setDeliveryTag(1L);
+        when(productService.verifyAndUpdateStockBatch(any())).thenReturn(List.of(StockReservationResult.confirmed()));
+
+        eventListener.receiveBatch(List.of(
+                new Message("{not json".getBytes(StandardCharsets.UTF_8), props),
+                createdMessage(2L, 60L, 1L, 2),
+                batchMessage("product.created", 3L, Map.of("id", 1L))), channel);
+
+        verify(productService).verifyAndUpdateStockBatch(List.of(List.of(new OrderLine(1L, 2))));
+        verify(channel).basicAck(3L, false);
+        verify(channel).basicAck(2L, false);
+        verify(channel).basicReject(1L, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void testReceive_partitionedModeAcksAfterProcessing() throws Exception {
+        OrderedEventDispatcher dispatcher = new OrderedEventDispatcher(2, 1, Duration.ZERO);
+        EventListener partitioned = new EventListener(productService, eventPublisher,
+                dispatcher, TransactionOperations.withoutTransaction(), processedEventLedger, eventMetrics, stockReservationService);
+        Channel channel = mock(Channel.class);
+        List<Map<String, Object>> items = List.of(Map.of("itemId", 5L, "quantity", 1));
+        String message = objectMapper.writeValueAsString(Map.of("payload", Map.of("orderId", 50L, "items", items)));
+        MessageProperties props = new MessageProperties();
+        props.setReceivedRoutingKey("order.cancelled");
+        props.setDeliveryTag(7L);
+
+        partitioned.receive(new Message(message.getBytes(StandardCharsets.UTF_8), props), channel);
+
+        verify(channel, timeout(2000)).basicAck(7L, false);
+        verify(productService).restoreStock(5L, 1);
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testReceive_partitionedModeNacksOnFailure() throws Exception {
+        OrderedEventDispatcher dispatcher = new OrderedEventDispatcher(2, 3, Duration.ofMillis(10));
+        EventListener partitioned = new EventListener(productService, eventPublisher,
+                dispatcher, TransactionOperations.withoutTransaction(), processedEventLedger, eventMetrics, stockReservationService);
+        Channel channel = mock(Channel.class);
+        doThrow(new IllegalStateException("db down")).when(productService).restoreStock(anyLong(), anyInt());
+        List<Map<String, Object>> items = List.of(Map.of("itemId", 5L, "quantity", 1));
+        String message = objectMapper.writeValueAsString(Map.of("payload", Map.of("orderId", 51L, "items", items)));
+        MessageProperties props = new MessageProperties();
+        props.setReceivedRoutingKey("order.deleted");
+        props.setDeliveryTag(8L);
+
+        partitioned.receive(new Message(message.getBytes(StandardCharsets.UTF_8), props), channel);
+
+        verify(channel, timeout(2000)).basicNack(8L, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        // Retenté sur place avant d'être rendu à RabbitMQ
+        verify(productService, times(3)).restoreStock(5L, 1);
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testReceive_partitionedModeRejectsUndecodableMessage() throws Exception {
+        OrderedEventDispatcher dispatcher = new OrderedEventDispatcher(2, 1, Duration.ZERO);
+        EventListener partitioned = new EventListener(productService, eventPublisher,
+                dispatcher, TransactionOperations.withoutTransaction(), processedEventLedger, eventMetrics, stockReservationService);
+        Channel channel = mock(Channel.class);
+        MessageProperties props = new MessageProperties();
+        props.setReceivedRoutingKey("order.created");
+        props.setDeliveryTag(9L);
+
+        partitioned.receive(new Message("{not json".getBytes(StandardCharsets.UTF_8), props), channel);
+
+        verify(channel).basicReject(9L, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        assertEquals(1.0, meterRegistry.get("products.events.rejected").counter().count());
+        verifyNoInteractions(productService, processedEventLedger);
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testHandleEvent_undecodableMessageIsNotRequeued() {
+        Message amqpMessage = mockAmqpMessage("order.created", "{not json");
+
+        // Conteneur en acquittement automatique : cette exception le fait rejeter sans remise en file
+        assertThrows(AmqpRejectAndDontRequeueException.class, () -> eventListener.handleEvent(amqpMessage));
+
+        verifyNoInteractions(productService, processedEventLedger);
+        assertEquals(1.0, meterRegistry.get("products.events.rejected").counter().count());
+    }
+
+    @Test
+    void testHandleOrderCreated_lenientNumbers() throws Exception {
+        String message = "{\"correlationId\":\"c-1\",\"payload\":{\"orderId\":\"60\",\"items\":["
+                + "{\"itemId\":\"3\",\"quantity\":4000000000},{\"itemId\":4,\"quantity\":\"2\"}]}}";
+        Message amqpMessage = mockAmqpMessage("order.created", message);
+
+        assertThrows(AmqpRejectAndDontRequeueException.class, () -> eventListener.handleEvent(amqpMessage));
 
-        var product = mock(fr.payetonkawa.products.entity.Product.class);
-        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
-        when(product.getStock()).thenReturn(5);
+        String valid = "{\"payload\":{\"orderId\":\"60\",\"items\":["
+                + "{\"itemId\":\"3\",\"quantity\":1},{\"itemId\":4,\"quantity\":2.0,\"name\":\"x\"}]}}";
+        when(productService.verifyAndUpdateStock(any())).thenReturn(StockReservationResult.confirmed());
 
-        eventListener.handleEvent(message, amqpMessage);
+        eventListener.handleEvent(mockAmqpMessage("order.created", valid));
 
-        verify(productRepository, times(1)).findById(1L);
-        verify(eventPublisher).sendEvent(eq("product.stock.insufficient"), any());
-        verify(productRepository, never()).save(any());
+        verify(productService).verifyAndUpdateStock(List.of(new OrderLine(3L, 1), new OrderLine(4L, 2)));
     }
 
     @Test
@@ -173,10 +533,10 @@ class EventListenerTest {
         String routingKey = "unknown.event";
         Map<String, Object> payload = Map.of("orderId", 99L, "items", List.of());
         String message = objectMapper.writeValueAsString(Map.of("payload", payload));
-        Message amqpMessage = mockAmqpMessage(routingKey);
+        Message amqpMessage = mockAmqpMessage(routingKey, message);
 
-        eventListener.handleEvent(message, amqpMessage);
+        eventListener.handleEvent(amqpMessage);
 
-        verifyNoInteractions(productService, productRepository, eventPublisher);
+        verifyNoInteractions(productService, eventPublisher);
     }
 }
\ No newline at end of file
@@ -1,23 +1,41 @@
 package fr.payetonkawa.products.event;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.payetonkawa.products.entity.OutboxEvent;
 import fr.payetonkawa.products.messaging.ExchangeMessage;
 import fr.payetonkawa.products.messaging.ExchangeQueues;
+import fr.payetonkawa.products.repository.OutboxEventRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 class EventPublisherTest {
 
     private AmqpTemplate amqpTemplate;
+    private OutboxEventRepository outboxEventRepository;
     private EventPublisher eventPublisher;
 
     @BeforeEach
     void setUp() {
         amqpTemplate = mock(AmqpTemplate.class);
-        eventPublisher = new EventPublisher(amqpTemplate);
+        outboxEventRepository = mock(OutboxEventRepository.class);
+        eventPublisher = new EventPublisher(amqpTemplate, new ObjectMapper(), outboxEventRepository);
+    }
+
+    private String sentBody(String routingKey) {
+        ArgumentCaptor<Message> messageCaptor = ArgumentCaptor.forClass(Message.class);
+        verify(amqpTemplate).send(eq(ExchangeQueues.EXCHANGE_NAME), eq(routingKey), messageCaptor.capture());
+        return new String(messageCaptor.getValue().getBody(), StandardCharsets.UTF_8);
     }
 
     @Test
@@ -34,17 +52,20 @@ class EventPublisherTest {
 
         ArgumentCaptor<String> exchangeCaptor = ArgumentCaptor.forClass(String.class);
         ArgumentCaptor<String> routingKeyCaptor = ArgumentCaptor.forClass(String.class);
-        ArgumentCaptor<String> payloadCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Message> messageCaptor = ArgumentCaptor.forClass(Message.class);
 
-        verify(amqpTemplate).convertAndSend(
+        verify(amqpTemplate).send(
                 exchangeCaptor.capture(),
                 routingKeyCaptor.capture(),
-                payloadCaptor.capture()
+                messageCaptor.capture()
         );
 
         assertEquals(ExchangeQueues.EXCHANGE_NAME, exchangeCaptor.getValue());
         assertEquals(routingKey, routingKeyCaptor.getValue());
-        assertTrue(payloadCaptor.getValue().contains("\"payload\":\"test-payload\""));
+        assertEquals(MessageProperties.CONTENT_TYPE_JSON, messageCaptor.getValue().getMessageProperties().getContentType());
+        assertEquals("UTF-8", messageCaptor.getValue().getMessageProperties().getContentEncoding());
+        assertTrue(new String(messageCaptor.getValue().getBody(), StandardCharsets.UTF_8)
+                .contains("\"payload\":\"test-payload\""));
     }
 
     @Test
@@ -58,12 +79,7 @@ class EventPublisherTest {
         assertEquals(ExchangeQueues.EXCHANGE_NAME, message.getExchangeId());
         assertEquals(routingKey, message.getRoutingKey());
         assertEquals(routingKey, message.getType());
-
-        verify(amqpTemplate).convertAndSend(
-                eq(ExchangeQueues.EXCHANGE_NAME),
-                eq(routingKey),
-                contains("\"payload\":\"another-payload\"")
-        );
+        assertTrue(sentBody(routingKey).contains("\"payload\":\"another-payload\""));
     }
 
     @Test
@@ -74,10 +90,38 @@ class EventPublisherTest {
 
         eventPublisher.sendEvent(routingKey, message);
 
-        verify(amqpTemplate).convertAndSend(
-                eq("global.events"),
-                eq("product.stock.confirmed"),
-                argThat((String json) -> json.contains("\"type\":\"product.stock.confirmed\""))
-        );
+        String json = sentBody("product.stock.confirmed");
+        assertTrue(json.contains("\"type\":\"product.stock.confirmed\""));
+        // Même format que Gson : pas de champ null
+        assertFalse(json.contains("payload"));
+        assertFalse(json.contains("correlationId"));
+    }
+
+    @Test
+    void testSendEvent_mapPayload() throws Exception {
+        eventPublisher.sendEvent("product.stock.insufficient", ExchangeMessage.builder()
+                .payload(Map.of("orderId", 42L, "failedItemIds", List.of(1L, 2L)))
+                .build());
+
+        var payload = new ObjectMapper().readTree(sentBody("product.stock.insufficient")).get("payload");
+        assertEquals(42L, payload.get("orderId").asLong());
+        assertEquals(2, payload.get("failedItemIds").size());
+    }
+
+    @Test
+    void testEnqueue_storesSerializedEventWithoutPublishing() {
+        eventPublisher.enqueue("product.stock.confirmed", ExchangeMessage.builder()
+                .payload(Map.of("orderId", 42L))
+                .build());
+
+        ArgumentCaptor<OutboxEvent> outboxCaptor = ArgumentCaptor.forClass(OutboxEvent.class);
+        verify(outboxEventRepository).save(outboxCaptor.capture());
+        OutboxEvent outboxEvent = outboxCaptor.getValue();
+        assertEquals("product.stock.confirmed", outboxEvent.getRoutingKey());
+        assertNotNull(outboxEvent.getCreatedAt());
+        String json = new String(outboxEvent.getBody(), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"routingKey\":\"product.stock.confirmed\""));
+        assertTrue(json.contains("\"orderId\":42"));
+        verifyNoInteractions(amqpTemplate);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,120 @@
+package fr.payetonkawa.products.event;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderedEventDispatcherTest {
+
+    private final OrderedEventDispatcher dispatcher = new OrderedEventDispatcher(4, 3, Duration.ofMillis(10));
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testEventsOnSameProductRunInArrivalOrder() throws Exception {
+        List<Integer> applied = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Void> first = dispatcher.dispatch(1L, List.of(10L, 11L), () -> {
+            await(release);
+            applied.add(1);
+        });
+        CompletableFuture<Void> second = dispatcher.dispatch(2L, List.of(11L), () -> applied.add(2));
+        CompletableFuture<Void> third = dispatcher.dispatch(3L, List.of(10L), () -> applied.add(3));
+
+        Thread.sleep(100);
+        assertTrue(applied.isEmpty());
+        release.countDown();
+        CompletableFuture.allOf(first, second, third).get(2, TimeUnit.SECONDS);
+
+        assertEquals(1, applied.get(0));
+        assertEquals(3, applied.size());
+    }
+
+    @Test
+    void testEventsOnSameOrderRunInArrivalOrder() throws Exception {
+        List<String> applied = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Void> created = dispatcher.dispatch(1L, List.of(10L), () -> {
+            await(release);
+            applied.add("created");
+        });
+        CompletableFuture<Void> cancelled = dispatcher.dispatch(1L, List.of(), () -> applied.add("cancelled"));
+
+        release.countDown();
+        CompletableFuture.allOf(created, cancelled).get(2, TimeUnit.SECONDS);
+
+        assertEquals(List.of("created", "cancelled"), applied);
+    }
+
+    @Test
+    void testDisjointEventsRunInParallel() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        CompletableFuture<Void> first = dispatcher.dispatch(1L, List.of(10L), () -> {
+            bothStarted.countDown();
+            await(bothStarted);
+        });
+        CompletableFuture<Void> second = dispatcher.dispatch(2L, List.of(20L), () -> {
+            bothStarted.countDown();
+            await(bothStarted);
+        });
+
+        CompletableFuture.allOf(first, second).get(2, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testFailedEventIsRetriedBeforeFollowingEventsOnSameProduct() throws Exception {
+        List<String> applied = new CopyOnWriteArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<Void> flaky = dispatcher.dispatch(1L, List.of(10L), () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new IllegalStateException("deadlock");
+            }
+            applied.add("first");
+        });
+        CompletableFuture<Void> next = dispatcher.dispatch(2L, List.of(10L), () -> applied.add("second"));
+
+        CompletableFuture.allOf(flaky, next).get(2, TimeUnit.SECONDS);
+        assertEquals(List.of("first", "second"), applied);
+        assertEquals(3, calls.get());
+    }
+
+    // Limite assumée : après la dernière tentative, le suivant passe avant la redélivrance du message
+    @Test
+    void testFailureDoesNotBlockFollowingEventsOnceAttemptsAreExhausted() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<Void> failing = dispatcher.dispatch(1L, List.of(10L), () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("boom");
+        });
+        CompletableFuture<Void> next = dispatcher.dispatch(2L, List.of(10L), () -> { });
+
+        next.get(2, TimeUnit.SECONDS);
+        assertTrue(failing.isCompletedExceptionally());
+        assertEquals(3, calls.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
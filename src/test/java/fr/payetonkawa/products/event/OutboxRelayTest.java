@@ -0,0 +1,187 @@
+package fr.payetonkawa.products.event;
+
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.entity.OutboxDeadLetter;
+import fr.payetonkawa.products.entity.OutboxEvent;
+import fr.payetonkawa.products.messaging.ExchangeQueues;
+import fr.payetonkawa.products.repository.OutboxDeadLetterRepository;
+import fr.payetonkawa.products.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class OutboxRelayTest {
+
+    private OutboxEventRepository outboxEventRepository;
+    private OutboxDeadLetterRepository outboxDeadLetterRepository;
+    private RabbitOperations rabbitOperations;
+    private RabbitOperations channelOperations;
+    private ProductsProperties productsProperties;
+    private SimpleMeterRegistry meterRegistry;
+    private OutboxRelay outboxRelay;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        outboxEventRepository = mock(OutboxEventRepository.class);
+        outboxDeadLetterRepository = mock(OutboxDeadLetterRepository.class);
+        rabbitOperations = mock(RabbitOperations.class);
+        channelOperations = mock(RabbitOperations.class);
+        when(rabbitOperations.invoke(any())).thenAnswer(invocation ->
+                invocation.getArgument(0, RabbitOperations.OperationsCallback.class).doInRabbit(channelOperations));
+        productsProperties = new ProductsProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        productsProperties.getOutbox().setBatchSize(2);
+        outboxRelay = new OutboxRelay(outboxEventRepository, outboxDeadLetterRepository, rabbitOperations,
+                TransactionOperations.withoutTransaction(), productsProperties, new EventMetrics(meterRegistry));
+    }
+
+    private OutboxEvent outboxEvent(long id, String routingKey) {
+        OutboxEvent outboxEvent = new OutboxEvent();
+        outboxEvent.setId(id);
+        outboxEvent.setRoutingKey(routingKey);
+        outboxEvent.setBody("{}".getBytes(StandardCharsets.UTF_8));
+        outboxEvent.setCreatedAt(Instant.now());
+        return outboxEvent;
+    }
+
+    @Test
+    void testRelayPublishesBatchWithConfirmThenDeletes() {
+        List<OutboxEvent> batch = List.of(outboxEvent(1L, "product.stock.confirmed"));
+        when(outboxEventRepository.findDue(any(Instant.class), any(Limit.class))).thenReturn(batch);
+
+        outboxRelay.relay();
+
+        ArgumentCaptor<Message> messageCaptor = ArgumentCaptor.forClass(Message.class);
+        verify(channelOperations).send(eq(ExchangeQueues.EXCHANGE_NAME), eq("product.stock.confirmed"), messageCaptor.capture());
+        assertEquals("product-outbox-1", messageCaptor.getValue().getMessageProperties().getMessageId());
+        verify(channelOperations).waitForConfirmsOrDie(5000L);
+        verify(outboxEventRepository).deleteAllInBatch(batch);
+        assertEquals(1, meterRegistry.get("products.outbox.publish").timer().count());
+        assertEquals(1.0, meterRegistry.get("products.outbox.batch.size").summary().totalAmount());
+    }
+
+    @Test
+    void testRelayKeepsDrainingWhileBatchesAreFull() {
+        List<OutboxEvent> full = List.of(outboxEvent(1L, "a"), outboxEvent(2L, "b"));
+        List<OutboxEvent> last = List.of(outboxEvent(3L, "c"));
+        when(outboxEventRepository.findDue(any(Instant.class), any(Limit.class))).thenReturn(full).thenReturn(last);
+
+        outboxRelay.relay();
+
+        verify(outboxEventRepository, times(2)).findDue(any(Instant.class), eq(Limit.of(2)));
+        verify(channelOperations, times(3)).send(anyString(), anyString(), any(Message.class));
+        verify(outboxEventRepository).deleteAllInBatch(full);
+        verify(outboxEventRepository).deleteAllInBatch(last);
+    }
+
+    @Test
+    void testRelayKeepsEventsWhenBrokerDoesNotConfirm() {
+        List<OutboxEvent> batch = List.of(outboxEvent(1L, "a"), outboxEvent(2L, "b"));
+        when(outboxEventRepository.findDue(any(Instant.class), any(Limit.class))).thenReturn(batch);
+        doThrow(new AmqpTimeoutException("no confirm")).when(channelOperations).waitForConfirmsOrDie(anyLong());
+        Instant before = Instant.now();
+
+        outboxRelay.relay();
+
+        // Le lot puis la première ligne seule : le reste attend le prochain passage
+        verify(rabbitOperations, times(2)).invoke(any());
+        verify(outboxEventRepository, never()).deleteAllInBatch(any());
+        verify(outboxEventRepository, times(1)).findDue(any(Instant.class), any(Limit.class));
+        assertEquals(1, batch.get(0).getAttempts());
+        assertFalse(batch.get(0).getNextAttemptAt().isBefore(before.plusSeconds(1)));
+        assertEquals(0, batch.get(1).getAttempts());
+        assertNull(batch.get(1).getNextAttemptAt());
+        assertEquals(1.0, meterRegistry.get("products.outbox.failures").counter().count());
+        verifyNoInteractions(outboxDeadLetterRepository);
+    }
+
+    @Test
+    void testRelayIsolatesThePoisonEventAndRelaysTheOnesBefore() {
+        OutboxEvent healthy = outboxEvent(1L, "a");
+        OutboxEvent poison = outboxEvent(2L, "poison");
+        OutboxEvent next = outboxEvent(3L, "c");
+        productsProperties.getOutbox().setBatchSize(3);
+        when(outboxEventRepository.findDue(any(Instant.class), any(Limit.class))).thenReturn(List.of(healthy, poison, next));
+        doThrow(new AmqpException("rejected")).when(channelOperations).send(anyString(), eq("poison"), any(Message.class));
+
+        outboxRelay.relay();
+
+        verify(outboxEventRepository).deleteAllInBatch(List.of(healthy));
+        assertEquals(1, poison.getAttempts());
+        assertNotNull(poison.getNextAttemptAt());
+        assertEquals(0, next.getAttempts());
+        verify(channelOperations, never()).send(anyString(), eq("c"), any(Message.class));
+    }
+
+    @Test
+    void testRelayDoublesTheBackoffUpToTheCap() {
+        OutboxEvent thirdFailure = outboxEvent(1L, "a");
+        thirdFailure.setAttempts(3);
+        OutboxEvent longFailing = outboxEvent(2L, "b");
+        longFailing.setAttempts(15);
+        when(outboxEventRepository.findDue(any(Instant.class), any(Limit.class)))
+                .thenReturn(List.of(thirdFailure))
+                .thenReturn(List.of(longFailing));
+        doThrow(new AmqpTimeoutException("no confirm")).when(channelOperations).waitForConfirmsOrDie(anyLong());
+
+        Instant before = Instant.now();
+        outboxRelay.relay();
+        outboxRelay.relay();
+        Instant after = Instant.now();
+
+        // 1 s doublée à chaque échec : le 4e échec repousse de 8 s ; le plafond de 5 min s'applique ensuite
+        assertEquals(4, thirdFailure.getAttempts());
+        assertFalse(thirdFailure.getNextAttemptAt().isBefore(before.plusSeconds(8)));
+        assertFalse(thirdFailure.getNextAttemptAt().isAfter(after.plusSeconds(8)));
+        assertEquals(16, longFailing.getAttempts());
+        assertFalse(longFailing.getNextAttemptAt().isAfter(after.plus(Duration.ofMinutes(5))));
+        assertFalse(longFailing.getNextAttemptAt().isBefore(before.plus(Duration.ofMinutes(5))));
+    }
+
+    @Test
+    void testRelayParksTheEventAfterMaxAttempts() {
+        OutboxEvent poison = outboxEvent(7L, "poison");
+        poison.setAttempts(productsProperties.getOutbox().getMaxAttempts() - 1);
+        when(outboxEventRepository.findDue(any(Instant.class), any(Limit.class))).thenReturn(List.of(poison));
+        doThrow(new AmqpException("rejected")).when(channelOperations).send(anyString(), eq("poison"), any(Message.class));
+
+        outboxRelay.relay();
+
+        ArgumentCaptor<OutboxDeadLetter> deadLetterCaptor = ArgumentCaptor.forClass(OutboxDeadLetter.class);
+        verify(outboxDeadLetterRepository).save(deadLetterCaptor.capture());
+        OutboxDeadLetter deadLetter = deadLetterCaptor.getValue();
+        assertEquals(7L, deadLetter.getId());
+        assertEquals("poison", deadLetter.getRoutingKey());
+        assertArrayEquals(poison.getBody(), deadLetter.getBody());
+        assertEquals(productsProperties.getOutbox().getMaxAttempts(), deadLetter.getAttempts());
+        assertEquals("rejected", deadLetter.getLastError());
+        verify(outboxEventRepository).delete(poison);
+        assertEquals(1.0, meterRegistry.get("products.outbox.parked").counter().count());
+    }
+
+    @Test
+    void testRelayDoesNothingWhenOutboxIsEmpty() {
+        when(outboxEventRepository.findDue(any(Instant.class), any(Limit.class))).thenReturn(List.of());
+
+        outboxRelay.relay();
+
+        verifyNoInteractions(rabbitOperations);
+        verify(outboxEventRepository, never()).deleteAllInBatch(any());
+    }
+}
@@ -0,0 +1,119 @@
+package fr.payetonkawa.products.event;
+
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.entity.ProcessedEvent;
+import fr.payetonkawa.products.messaging.OrderEvent;
+import fr.payetonkawa.products.messaging.OrderLine;
+import fr.payetonkawa.products.repository.ProcessedEventRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ProcessedEventLedgerTest {
+
+    private ProcessedEventRepository processedEventRepository;
+    private ProductsProperties productsProperties;
+    private ProcessedEventLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        processedEventRepository = mock(ProcessedEventRepository.class);
+        productsProperties = new ProductsProperties();
+        ledger = new ProcessedEventLedger(processedEventRepository, productsProperties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testKeyPrefersCorrelationId() {
+        OrderEvent event = new OrderEvent.Created(1L, "c-1", List.of(new OrderLine(2L, 1)));
+
+        assertEquals("order.created:c-1", ProcessedEventLedger.keyOf("order.created", event, "m-1"));
+    }
+
+    @Test
+    void testKeyFallsBackToOrderId() {
+        OrderEvent event = new OrderEvent.Cancelled(7L, null, List.of());
+
+        assertEquals("order.cancelled:7", ProcessedEventLedger.keyOf("order.cancelled", event, null));
+    }
+
+    @Test
+    void testKeyFallsBackToMessageId() {
+        OrderEvent event = new OrderEvent.Updated(7L, null, List.of(), List.of());
+
+        assertEquals("order.updated:message:m-1", ProcessedEventLedger.keyOf("order.updated", event, "m-1"));
+    }
+
+    @Test
+    void testUpdateWithoutAnyIdIsNotDeduplicated() {
+        // A -> B -> A -> B : la seconde modification vers B a le même corps que la première
+        OrderEvent event = new OrderEvent.Updated(7L, null, List.of(new OrderLine(1L, 1)), List.of(new OrderLine(1L, 2)));
+
+        assertNull(ProcessedEventLedger.keyOf("order.updated", event, null));
+        assertNull(ProcessedEventLedger.keyOf("order.updated", event, " "));
+        assertTrue(ledger.markProcessed(null));
+        assertTrue(ledger.markProcessed(null));
+        verifyNoInteractions(processedEventRepository);
+    }
+
+    @Test
+    void testMarkProcessedInsertsOnce() {
+        when(processedEventRepository.existsById("k")).thenReturn(false);
+
+        assertTrue(ledger.markProcessed("k"));
+        // Hors transaction la clé est mémorisée aussitôt : la seconde livraison ne touche pas la base
+        assertFalse(ledger.markProcessed("k"));
+
+        verify(processedEventRepository, times(1)).saveAndFlush(any(ProcessedEvent.class));
+        verify(processedEventRepository, times(1)).existsById("k");
+    }
+
+    @Test
+    void testMarkProcessedRejectsKeyKnownInDatabase() {
+        when(processedEventRepository.existsById("k")).thenReturn(true);
+
+        assertFalse(ledger.markProcessed("k"));
+        verify(processedEventRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void testKeyIsCachedOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        when(processedEventRepository.existsById("k")).thenReturn(false);
+
+        assertTrue(ledger.markProcessed("k"));
+        // Transaction annulée : la clé n'est pas en cache et la redélivrance sera traitée
+        TransactionSynchronizationManager.getSynchronizations().forEach(sync ->
+                sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertTrue(ledger.markProcessed("k"));
+        verify(processedEventRepository, times(2)).saveAndFlush(any(ProcessedEvent.class));
+    }
+
+    @Test
+    void testPurgeUsesRetention() {
+        productsProperties.getDeduplication().setRetention(Duration.ofDays(2));
+
+        ledger.purge();
+
+        verify(processedEventRepository).deleteProcessedBefore(argThat(before ->
+                before.isBefore(Instant.now().minus(Duration.ofDays(2)).plusSeconds(5))
+                        && before.isAfter(Instant.now().minus(Duration.ofDays(2)).minusSeconds(5))));
+    }
+}
@@ -0,0 +1,58 @@
+package fr.payetonkawa.products.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MarkerFactory;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SamplingTurboFilterTest {
+
+    private SamplingTurboFilter filter;
+    private Logger logger;
+
+    @BeforeEach
+    void setUp() {
+        filter = new SamplingTurboFilter();
+        filter.setRate(10);
+        filter.start();
+        logger = new LoggerContext().getLogger(SamplingTurboFilterTest.class);
+    }
+
+    private FilterReply decide(org.slf4j.Marker marker, Level level) {
+        return filter.decide(marker, logger, level, "orderId={}", new Object[]{42L}, null);
+    }
+
+    @Test
+    void testSampledLinesAreThinnedOut() {
+        long kept = IntStream.range(0, 10_000)
+                .filter(i -> decide(SamplingTurboFilter.SAMPLED, Level.INFO) == FilterReply.NEUTRAL)
+                .count();
+
+        assertTrue(kept > 800 && kept < 1200, "kept " + kept);
+    }
+
+    @Test
+    void testUnmarkedAndWarningLinesAlwaysPass() {
+        for (int i = 0; i < 100; i++) {
+            assertEquals(FilterReply.NEUTRAL, decide(null, Level.INFO));
+            assertEquals(FilterReply.NEUTRAL, decide(MarkerFactory.getMarker("OTHER"), Level.INFO));
+            assertEquals(FilterReply.NEUTRAL, decide(SamplingTurboFilter.SAMPLED, Level.WARN));
+        }
+    }
+
+    @Test
+    void testRateOfOneKeepsEverything() {
+        filter.setRate(1);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(FilterReply.NEUTRAL, decide(SamplingTurboFilter.SAMPLED, Level.INFO));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package fr.payetonkawa.products.messaging;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderEventDecoderTest {
+
+    private static byte[] json(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testDecodeCreated() throws Exception {
+        OrderEvent event = OrderEventDecoder.decode("order.created", json(
+                "{\"exchangeId\":\"global.events\",\"correlationId\":\"abc\","
+                        + "\"payload\":{\"orderId\":42,\"items\":[{\"itemId\":1,\"quantity\":2},{\"itemId\":3,\"quantity\":4}]}}"));
+
+        OrderEvent.Created created = assertInstanceOf(OrderEvent.Created.class, event);
+        assertEquals(42L, created.orderId());
+        assertEquals("abc", created.correlationId());
+        assertEquals(List.of(new OrderLine(1, 2), new OrderLine(3, 4)), created.items());
+        assertEquals(List.of(1L, 3L), created.productIds());
+    }
+
+    @Test
+    void testDecodeUpdatedWithPayloadBeforeMetadata() throws Exception {
+        OrderEvent event = OrderEventDecoder.decode("order.updated", json(
+                "{\"payload\":{\"items\":[{\"itemId\":1,\"quantity\":3}],\"orderId\":\"46\","
+                        + "\"previousItems\":[{\"quantity\":2,\"itemId\":\"1\"},{\"itemId\":9,\"quantity\":1}]},"
+                        + "\"routingKey\":\"order.updated\"}"));
+
+        OrderEvent.Updated updated = assertInstanceOf(OrderEvent.Updated.class, event);
+        assertEquals(46L, updated.orderId());
+        assertNull(updated.correlationId());
+        assertEquals(List.of(new OrderLine(1, 2), new OrderLine(9, 1)), updated.previousItems());
+        assertEquals(List.of(new OrderLine(1, 3)), updated.items());
+        assertEquals(List.of(1L, 9L, 1L), updated.productIds());
+    }
+
+    @Test
+    void testUnknownFieldsAreSkipped() throws Exception {
+        OrderEvent event = OrderEventDecoder.decode("order.cancelled", json(
+                "{\"meta\":{\"a\":[1,{\"b\":2}]},\"payload\":{\"orderId\":5,\"customer\":{\"id\":7},"
+                        + "\"items\":[{\"itemId\":1,\"quantity\":1,\"options\":[\"x\"]}]}}"));
+
+        assertEquals(List.of(new OrderLine(1, 1)), event.items());
+    }
+
+    @Test
+    void testNonScalarCorrelationIdIsSkipped() throws Exception {
+        OrderEvent event = OrderEventDecoder.decode("order.created", json(
+                "{\"correlationId\":{\"payload\":{\"orderId\":99,\"items\":[]}},"
+                        + "\"payload\":{\"orderId\":5,\"items\":[{\"itemId\":1,\"quantity\":2}]}}"));
+
+        assertEquals(5L, event.orderId());
+        assertNull(event.correlationId());
+        assertEquals(List.of(new OrderLine(1, 2)), event.items());
+    }
+
+    @Test
+    void testArrayCorrelationIdIsSkippedAndNumberKept() throws Exception {
+        OrderEvent event = OrderEventDecoder.decode("order.deleted", json(
+                "{\"correlationId\":[\"a\"],\"payload\":{\"orderId\":5}}"));
+        OrderEvent numeric = OrderEventDecoder.decode("order.deleted", json(
+                "{\"correlationId\":42,\"payload\":{\"orderId\":5}}"));
+
+        assertNull(event.correlationId());
+        assertEquals("42", numeric.correlationId());
+    }
+
+    @Test
+    void testNullItemsAreEmpty() throws Exception {
+        OrderEvent event = OrderEventDecoder.decode("order.deleted", json("{\"payload\":{\"orderId\":5,\"items\":null}}"));
+
+        assertTrue(event.items().isEmpty());
+    }
+
+    @Test
+    void testMissingOrderIdIsRejected() {
+        assertThrows(IllegalArgumentException.class, () ->
+                OrderEventDecoder.decode("order.created", json("{\"payload\":{\"items\":[]}}")));
+    }
+
+    @Test
+    void testInvalidQuantityIsRejected() {
+        for (String quantity : List.of("\"two\"", "\"2\"", "-1", "2.9", "4000000000", "null")) {
+            assertThrows(IllegalArgumentException.class, () ->
+                    OrderEventDecoder.decode("order.created", json(
+                            "{\"payload\":{\"orderId\":1,\"items\":[{\"itemId\":1,\"quantity\":" + quantity + "}]}}")),
+                    quantity);
+        }
+        assertThrows(IllegalArgumentException.class, () ->
+                OrderEventDecoder.decode("order.created", json(
+                        "{\"payload\":{\"orderId\":1,\"items\":[{\"itemId\":1}]}}")));
+    }
+
+    @Test
+    void testIntegralFloatAndZeroQuantitiesAreAccepted() throws Exception {
+        OrderEvent event = OrderEventDecoder.decode("order.updated", json(
+                "{\"payload\":{\"orderId\":1,\"items\":[{\"itemId\":1,\"quantity\":2.0},{\"itemId\":2,\"quantity\":0}]}}"));
+
+        assertEquals(List.of(new OrderLine(1, 2), new OrderLine(2, 0)), event.items());
+    }
+
+    @Test
+    void testFractionalIdIsRejected() {
+        assertThrows(IllegalArgumentException.class, () ->
+                OrderEventDecoder.decode("order.created", json("{\"payload\":{\"orderId\":1.5,\"items\":[]}}")));
+        assertThrows(IllegalArgumentException.class, () ->
+                OrderEventDecoder.decode("order.created", json(
+                        "{\"payload\":{\"orderId\":1,\"items\":[{\"itemId\":3.2,\"quantity\":1}]}}")));
+    }
+
+    @Test
+    void testDecodeCompletedWithoutItems() throws Exception {
+        OrderEvent event = OrderEventDecoder.decode("order.completed", json("{\"payload\":{\"orderId\":7}}"));
+
+        OrderEvent.Completed completed = assertInstanceOf(OrderEvent.Completed.class, event);
+        assertEquals(7L, completed.orderId());
+        assertTrue(completed.items().isEmpty());
+    }
+
+    @Test
+    void testUnsupportedRoutingKey() {
+        assertFalse(OrderEventDecoder.supports("product.updated"));
+        assertThrows(IllegalArgumentException.class, () -> OrderEventDecoder.decode("product.updated", json("{}")));
+    }
+}
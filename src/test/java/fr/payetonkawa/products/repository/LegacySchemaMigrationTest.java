@@ -0,0 +1,60 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.entity.Product;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Base créée par l'ancien ddl-auto: update, avant Flyway : les migrations doivent l'amener au schéma des entités
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=validate")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LegacySchemaMigrationTest {
+
+    @DynamicPropertySource
+    static void legacyDatabase(DynamicPropertyRegistry registry) {
+        String url = "jdbc:h2:mem:legacy-" + UUID.randomUUID() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL(url);
+        dataSource.setUser("sa");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        // DDL générée par Hibernate pour l'entité Product d'origine : id IDENTITY, ni version ni horodatage
+        jdbc.execute("create table product (id bigint generated by default as identity, color varchar(255), "
+                + "description varchar(255) not null, name varchar(255) not null, price float(53) not null, "
+                + "stock integer not null, primary key (id))");
+        jdbc.update("insert into product (name, price, description, color, stock) values ('Café', 4.5, 'd', 'noir', 7)");
+        registry.add("spring.datasource.url", () -> url);
+        registry.add("spring.datasource.driver-class-name", () -> "org.h2.Driver");
+        registry.add("spring.datasource.username", () -> "sa");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Test
+    void testExistingProductsAreMigratedAndStillWritable() {
+        // Le contexte ne démarre que si ddl-auto: validate accepte le schéma migré
+        Product product = productRepository.findAll().getFirst();
+        assertEquals(0L, product.getVersion());
+        assertEquals(7, product.getStock());
+
+        product.setStock(8);
+        productRepository.saveAndFlush(product);
+
+        Product saved = productRepository.findById(product.getId()).orElseThrow();
+        assertEquals(8, saved.getStock());
+        assertEquals(1L, saved.getVersion());
+    }
+}
@@ -0,0 +1,76 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.entity.OutboxEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OutboxEventRepositoryTest {
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown() {
+        outboxEventRepository.deleteAll();
+    }
+
+    private void saveEvent(String routingKey) {
+        saveEvent(routingKey, null);
+    }
+
+    private void saveEvent(String routingKey, Instant nextAttemptAt) {
+        OutboxEvent outboxEvent = new OutboxEvent();
+        outboxEvent.setRoutingKey(routingKey);
+        outboxEvent.setBody(("{\"routingKey\":\"" + routingKey + "\"}").getBytes(StandardCharsets.UTF_8));
+        outboxEvent.setCreatedAt(Instant.now());
+        outboxEvent.setNextAttemptAt(nextAttemptAt);
+        outboxEventRepository.save(outboxEvent);
+    }
+
+    @Test
+    void testBatchIsReturnedInInsertionOrder() {
+        saveEvent("product.stock.confirmed");
+        saveEvent("product.stock.insufficient");
+        saveEvent("product.stock.confirmed");
+
+        List<OutboxEvent> batch = new TransactionTemplate(transactionManager)
+                .execute(status -> outboxEventRepository.findDue(Instant.now(), Limit.of(2)));
+
+        assertEquals(2, batch.size());
+        assertTrue(batch.get(0).getId() < batch.get(1).getId());
+        assertEquals("product.stock.insufficient", batch.get(1).getRoutingKey());
+        assertEquals("{\"routingKey\":\"product.stock.insufficient\"}",
+                new String(batch.get(1).getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testEventsWaitingForTheirNextAttemptAreSkipped() {
+        saveEvent("product.stock.confirmed", Instant.now().plusSeconds(60));
+        saveEvent("product.stock.insufficient", Instant.now().minusSeconds(1));
+        saveEvent("product.stock.expired");
+
+        List<OutboxEvent> batch = new TransactionTemplate(transactionManager)
+                .execute(status -> outboxEventRepository.findDue(Instant.now(), Limit.of(10)));
+
+        assertEquals(List.of("product.stock.insufficient", "product.stock.expired"),
+                batch.stream().map(OutboxEvent::getRoutingKey).toList());
+    }
+}
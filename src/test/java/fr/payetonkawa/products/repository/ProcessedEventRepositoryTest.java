@@ -0,0 +1,47 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.entity.ProcessedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProcessedEventRepositoryTest {
+
+    @Autowired
+    private ProcessedEventRepository processedEventRepository;
+
+    @AfterEach
+    void tearDown() {
+        processedEventRepository.deleteAll();
+    }
+
+    @Test
+    void testDuplicateKeyIsRejected() {
+        processedEventRepository.saveAndFlush(new ProcessedEvent("order.created:1", Instant.now()));
+
+        assertThrows(DataIntegrityViolationException.class, () ->
+                processedEventRepository.saveAndFlush(new ProcessedEvent("order.created:1", Instant.now())));
+    }
+
+    @Test
+    void testDeleteProcessedBefore() {
+        Instant now = Instant.now();
+        processedEventRepository.save(new ProcessedEvent("old", now.minus(Duration.ofDays(8))));
+        processedEventRepository.save(new ProcessedEvent("recent", now.minus(Duration.ofHours(1))));
+
+        assertEquals(1, processedEventRepository.deleteProcessedBefore(now.minus(Duration.ofDays(7))));
+        assertFalse(processedEventRepository.existsById("old"));
+        assertTrue(processedEventRepository.existsById("recent"));
+    }
+}
@@ -0,0 +1,316 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.dto.ProductDto;
+import fr.payetonkawa.products.dto.ProductSearch;
+import fr.payetonkawa.products.dto.ProductVersion;
+import fr.payetonkawa.products.entity.Product;
+import fr.payetonkawa.products.entity.StockJournalEntry;
+import fr.payetonkawa.products.util.LongIntMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProductRepositoryTest {
+
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 25;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StockJournalRepository stockJournalRepository;
+
+    @AfterEach
+    void tearDown() {
+        stockJournalRepository.deleteAll();
+        productRepository.deleteAll();
+    }
+
+    private Product saveProduct(int stock) {
+        Product product = new Product();
+        product.setName("Hot product");
+        product.setPrice(10.0);
+        product.setDescription("desc");
+        product.setStock(stock);
+        return productRepository.save(product);
+    }
+
+    private int decrement(Long productId, int quantity) {
+        return productRepository.decrementStocks(LongIntMap.copyOf(Map.of(productId, quantity)));
+    }
+
+    @Test
+    void testDecrementStockRefusesToOversell() {
+        Product product = saveProduct(3);
+
+        assertEquals(0, decrement(product.getId(), 5));
+        assertEquals(1, decrement(product.getId(), 3));
+        assertEquals(0, productRepository.findById(product.getId()).orElseThrow().getStock());
+    }
+
+    @Test
+    void testDecrementStocksAppliesEachLineInOneStatement() {
+        Product first = saveProduct(5);
+        Product second = saveProduct(1);
+        Product third = saveProduct(4);
+
+        int updated = productRepository.decrementStocks(LongIntMap.copyOf(Map.of(
+                first.getId(), 2, second.getId(), 3, third.getId(), 4, -1L, 1)));
+
+        // Le produit 2 manque de stock et -1 n'existe pas : seules les deux autres lignes passent
+        assertEquals(2, updated);
+        assertEquals(3, productRepository.findById(first.getId()).orElseThrow().getStock());
+        assertEquals(1, productRepository.findById(second.getId()).orElseThrow().getStock());
+        assertEquals(0, productRepository.findById(third.getId()).orElseThrow().getStock());
+        assertEquals(0, productRepository.decrementStocks(new LongIntMap()));
+    }
+
+    @Test
+    void testStockUpdatesMoveVersionAndUpdatedAt() throws InterruptedException {
+        Product product = saveProduct(3);
+        assertNotNull(product.getUpdatedAt());
+        Thread.sleep(5);
+
+        decrement(product.getId(), 1);
+
+        ProductVersion version = productRepository.findVersionById(product.getId()).orElseThrow();
+        assertEquals(product.getVersion() + 1, version.version());
+        assertTrue(version.updatedAt().isAfter(product.getUpdatedAt()));
+        assertTrue(productRepository.findVersionById(-1L).isEmpty());
+    }
+
+    @Test
+    void testTouchChangeSeqMovesProductsToTheEndOfTheFeed() {
+        Product first = saveProduct(1);
+        Product second = saveProduct(1);
+        long since = productRepository.findById(second.getId()).orElseThrow().getChangeSeq();
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+
+        assertEquals(1, productRepository.touchChangeSeq(List.of(first.getId(), -1L), now));
+
+        List<Product> changed = productRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(since, Limit.of(10));
+        assertEquals(List.of(first.getId()), changed.stream().map(Product::getId).toList());
+        assertEquals(now, changed.getFirst().getUpdatedAt());
+    }
+
+    @Test
+    @Transactional
+    void testFindAllByIdForUpdateLocksInIdOrder() {
+        Long first = saveProduct(1).getId();
+        Long second = saveProduct(1).getId();
+        Long third = saveProduct(1).getId();
+
+        List<Product> locked = productRepository.findAllByIdForUpdate(List.of(third, first, second, -1L));
+
+        assertEquals(List.of(first, second, third), locked.stream().map(Product::getId).toList());
+    }
+
+    @Test
+    void testSchemaRejectsNegativeStock() {
+        Product product = saveProduct(2);
+
+        assertThrows(DataIntegrityViolationException.class, () -> productRepository.incrementStock(product.getId(), -3));
+        assertEquals(2, productRepository.findById(product.getId()).orElseThrow().getStock());
+    }
+
+    @Test
+    void testAvailableStockIncludesPendingJournalDeltas() {
+        Product product = saveProduct(10);
+        Product other = saveProduct(10);
+        stockJournalRepository.saveAll(List.of(
+                new StockJournalEntry(product.getId(), -4, Instant.now()),
+                new StockJournalEntry(product.getId(), 1, Instant.now()),
+                new StockJournalEntry(other.getId(), -10, Instant.now())));
+
+        assertEquals(Optional.of(7L), productRepository.findAvailableStock(product.getId()));
+        assertEquals(Optional.of(0L), productRepository.findAvailableStock(other.getId()));
+        assertEquals(Optional.empty(), productRepository.findAvailableStock(-1L));
+    }
+
+    @Test
+    void testDecrementStockBumpsVersion() {
+        Product product = saveProduct(3);
+        long version = product.getVersion();
+
+        decrement(product.getId(), 1);
+
+        assertEquals(version + 1, productRepository.findById(product.getId()).orElseThrow().getVersion());
+    }
+
+    @Test
+    void testSaveAllAssignsIdsFromPooledSequence() {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            Product product = new Product();
+            product.setName("Batch " + i);
+            product.setPrice(1.0);
+            product.setDescription("desc");
+            products.add(product);
+        }
+
+        List<Product> saved = productRepository.saveAll(products);
+
+        assertEquals(60, saved.stream().map(Product::getId).distinct().count());
+        assertEquals(60, productRepository.count());
+    }
+
+    @Test
+    void testKeysetPage() {
+        Long first = saveProduct(1).getId();
+        Long second = saveProduct(1).getId();
+        Long third = saveProduct(1).getId();
+
+        List<Product> page = productRepository.findByIdGreaterThanOrderByIdAsc(first, Limit.of(1));
+
+        assertEquals(List.of(second), page.stream().map(Product::getId).toList());
+        assertEquals(List.of(third), productRepository.findByIdGreaterThanOrderByIdAsc(second, Limit.of(10))
+                .stream().map(Product::getId).toList());
+    }
+
+    private Product saveProduct(String name, double price, String color) {
+        Product product = new Product();
+        product.setName(name);
+        product.setPrice(price);
+        product.setDescription("desc");
+        product.setColor(color);
+        product.setStock(1);
+        return productRepository.save(product);
+    }
+
+    private List<String> search(ProductSearch.ProductSearchBuilder search, int limit) {
+        return productRepository.search(search.build(), limit).stream().map(Product::getName).toList();
+    }
+
+    @Test
+    void testSearchFiltersOnColorAndPriceRange() {
+        saveProduct("a", 5.0, "red");
+        saveProduct("b", 10.0, "red");
+        saveProduct("c", 20.0, "red");
+        saveProduct("d", 10.0, "blue");
+
+        assertEquals(List.of("b", "c"), search(ProductSearch.builder().color("red").minPrice(10.0), 10));
+        assertEquals(List.of("a", "b", "d"), search(ProductSearch.builder().maxPrice(10.0), 10));
+    }
+
+    @Test
+    void testSearchKeysetPagesByPriceWithTies() {
+        Product a = saveProduct("a", 10.0, null);
+        saveProduct("b", 10.0, null);
+        saveProduct("c", 5.0, null);
+        Product d = saveProduct("d", 20.0, null);
+
+        assertEquals(List.of("c", "a"), search(ProductSearch.builder().sort(ProductSearch.Sort.PRICE), 2));
+        ProductSearch.Cursor afterA = ProductSearch.Cursor.of(ProductSearch.Sort.PRICE, ProductDto.fromEntity(a));
+        assertEquals(List.of("b", "d"), search(ProductSearch.builder().sort(ProductSearch.Sort.PRICE).after(afterA), 10));
+
+        ProductSearch.Cursor afterD = ProductSearch.Cursor.of(ProductSearch.Sort.PRICE_DESC, ProductDto.fromEntity(d));
+        assertEquals(List.of("b", "a", "c"), search(ProductSearch.builder().sort(ProductSearch.Sort.PRICE_DESC).after(afterD), 10));
+    }
+
+    @Test
+    void testSearchKeysetPagesByNameAndId() {
+        Product first = saveProduct("zeta", 1.0, null);
+        saveProduct("alpha", 1.0, null);
+        Product second = saveProduct("zeta", 1.0, null);
+
+        ProductSearch.Cursor afterAlpha = new ProductSearch.Cursor("alpha", Long.MAX_VALUE);
+        assertEquals(List.of(first.getId(), second.getId()), productRepository.search(ProductSearch.builder()
+                .sort(ProductSearch.Sort.NAME).after(afterAlpha).build(), 10).stream().map(Product::getId).toList());
+        assertEquals(List.of("alpha", "zeta"), search(ProductSearch.builder()
+                .after(new ProductSearch.Cursor(null, first.getId())), 10));
+    }
+
+    @Test
+    @Transactional
+    void testStreamAllReturnsDtosInIdOrder() {
+        Long first = saveProduct(1).getId();
+        Long second = saveProduct(2).getId();
+
+        try (Stream<ProductDto> products = productRepository.streamAll()) {
+            assertEquals(List.of(first, second), products.map(ProductDto::getId).toList());
+        }
+    }
+
+    @Test
+    void testConcurrentDecrementsOnSameProductAreExact() throws Exception {
+        int initialStock = 100;
+        Long productId = saveProduct(initialStock).getId();
+        AtomicInteger successes = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    successes.addAndGet(decrement(productId, 1));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(initialStock, successes.get());
+        assertEquals(0, productRepository.findById(productId).orElseThrow().getStock());
+    }
+
+    @Test
+    void testConcurrentDecrementsAndRestoresAreExact() throws Exception {
+        int initialStock = 50;
+        Long productId = saveProduct(initialStock).getId();
+        AtomicInteger decremented = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            boolean restorer = t % 2 == 0;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    if (restorer) {
+                        productRepository.incrementStock(productId, 1);
+                    } else {
+                        decremented.addAndGet(decrement(productId, 2) * 2);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        int restored = (THREADS / 2) * ATTEMPTS_PER_THREAD;
+        int finalStock = productRepository.findById(productId).orElseThrow().getStock();
+        assertTrue(finalStock >= 0);
+        assertEquals(initialStock + restored - decremented.get(), finalStock);
+    }
+}
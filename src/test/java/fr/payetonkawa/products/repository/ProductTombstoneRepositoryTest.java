@@ -0,0 +1,62 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.entity.ProductTombstone;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProductTombstoneRepositoryTest {
+
+    @Autowired
+    private ProductTombstoneRepository productTombstoneRepository;
+
+    @AfterEach
+    void tearDown() {
+        productTombstoneRepository.deleteAll();
+    }
+
+    @Test
+    void testRepeatedDeletionKeepsFirstTombstone() {
+        Instant now = Instant.now();
+
+        assertEquals(1, productTombstoneRepository.insertIfAbsent(7L, now));
+        long changeSeq = productTombstoneRepository.findById(7L).orElseThrow().getChangeSeq();
+        assertEquals(0, productTombstoneRepository.insertIfAbsent(7L, now.plusSeconds(1)));
+
+        assertEquals(changeSeq, productTombstoneRepository.findById(7L).orElseThrow().getChangeSeq());
+    }
+
+    @Test
+    void testTombstonesFollowTheChangeSequence() {
+        Instant now = Instant.now();
+        productTombstoneRepository.insertIfAbsent(9L, now);
+        productTombstoneRepository.insertIfAbsent(8L, now);
+        long since = productTombstoneRepository.findById(9L).orElseThrow().getChangeSeq();
+
+        List<ProductTombstone> tombstones = productTombstoneRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(since, Limit.of(10));
+
+        assertEquals(List.of(8L), tombstones.stream().map(ProductTombstone::getProductId).toList());
+    }
+
+    @Test
+    void testPurgeRemovesOnlyExpiredTombstones() {
+        Instant now = Instant.now();
+        productTombstoneRepository.insertIfAbsent(1L, now.minus(Duration.ofDays(40)));
+        productTombstoneRepository.insertIfAbsent(2L, now);
+
+        assertEquals(1, productTombstoneRepository.deleteDeletedBefore(now.minus(Duration.ofDays(30))));
+        assertEquals(List.of(2L), productTombstoneRepository.findAll().stream().map(ProductTombstone::getProductId).toList());
+    }
+}
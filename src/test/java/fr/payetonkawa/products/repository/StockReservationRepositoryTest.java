@@ -0,0 +1,64 @@
+package fr.payetonkawa.products.repository;
+
+import fr.payetonkawa.products.entity.StockReservation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StockReservationRepositoryTest {
+
+    @Autowired
+    private StockReservationRepository stockReservationRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown() {
+        stockReservationRepository.deleteAll();
+    }
+
+    @Test
+    void testExpiredReservationsAreReturnedOldestFirst() {
+        Instant now = Instant.now();
+        stockReservationRepository.saveAll(List.of(
+                new StockReservation(1L, 10L, 1, now.minus(Duration.ofMinutes(5))),
+                new StockReservation(2L, 10L, 2, now.plus(Duration.ofMinutes(5))),
+                new StockReservation(3L, 11L, 3, now.minus(Duration.ofMinutes(20))),
+                new StockReservation(4L, 12L, 4, now.minus(Duration.ofMinutes(1)))));
+
+        List<StockReservation> expired = new TransactionTemplate(transactionManager).execute(status ->
+                stockReservationRepository.findByExpiresAtBeforeOrderByExpiresAtAsc(now, Limit.of(2)));
+
+        assertEquals(List.of(3L, 1L), expired.stream().map(StockReservation::getOrderId).toList());
+    }
+
+    @Test
+    void testFindByOrderId() {
+        Instant expiresAt = Instant.now().plus(Duration.ofMinutes(30));
+        stockReservationRepository.saveAll(List.of(
+                new StockReservation(1L, 10L, 1, expiresAt),
+                new StockReservation(1L, 11L, 2, expiresAt),
+                new StockReservation(2L, 10L, 3, expiresAt)));
+
+        List<StockReservation> reservations = new TransactionTemplate(transactionManager).execute(status ->
+                stockReservationRepository.findByOrderId(1L));
+
+        assertEquals(2, reservations.size());
+        assertTrue(reservations.stream().allMatch(reservation -> reservation.getOrderId() == 1L));
+    }
+}
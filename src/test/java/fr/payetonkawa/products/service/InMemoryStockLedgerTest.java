@@ -0,0 +1,190 @@
+package fr.payetonkawa.products.service;
+
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.entity.StockJournalEntry;
+import fr.payetonkawa.products.event.ProductsChangedEvent;
+import fr.payetonkawa.products.repository.ProductRepository;
+import fr.payetonkawa.products.repository.StockJournalRepository;
+import fr.payetonkawa.products.util.LongIntMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class InMemoryStockLedgerTest {
+
+    private ProductRepository productRepository;
+    private StockJournalRepository stockJournalRepository;
+    private ApplicationEventPublisher applicationEventPublisher;
+    private ProductsProperties productsProperties;
+    private InMemoryStockLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        stockJournalRepository = mock(StockJournalRepository.class);
+        applicationEventPublisher = mock(ApplicationEventPublisher.class);
+        productsProperties = new ProductsProperties();
+        productsProperties.getStock().setUpdateMode(ProductsProperties.StockUpdateMode.IN_MEMORY);
+        ledger = new InMemoryStockLedger(productRepository, stockJournalRepository,
+                TransactionOperations.withoutTransaction(), applicationEventPublisher, productsProperties);
+        when(productRepository.findAvailableStock(anyLong())).thenReturn(Optional.empty());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static StockJournalEntry entry(long id, long productId, int delta) {
+        StockJournalEntry entry = new StockJournalEntry(productId, delta, Instant.now());
+        entry.setId(id);
+        return entry;
+    }
+
+    @Test
+    void testConcurrentReservationsNeverOversell() throws Exception {
+        when(productRepository.findAvailableStock(1L)).thenReturn(Optional.of(100L));
+        AtomicInteger confirmed = new AtomicInteger();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 400; i++) {
+                executor.submit(() -> {
+                    if (ledger.reserve(LongIntMap.copyOf(Map.of(1L, 1))).isEmpty()) {
+                        confirmed.incrementAndGet();
+                    }
+                });
+            }
+        }
+
+        assertEquals(100, confirmed.get());
+        assertEquals(List.of(1L), ledger.reserve(LongIntMap.copyOf(Map.of(1L, 1))));
+        // Compteur chargé une seule fois, puis servi depuis la mémoire
+        verify(productRepository, atMost(8)).findAvailableStock(1L);
+        verify(productRepository, never()).decrementStocks(any());
+    }
+
+    @Test
+    void testReservationIsAllOrNothing() {
+        when(productRepository.findAvailableStock(1L)).thenReturn(Optional.of(5L));
+        when(productRepository.findAvailableStock(2L)).thenReturn(Optional.of(1L));
+
+        assertEquals(Set.of(2L, 3L), Set.copyOf(ledger.reserve(LongIntMap.copyOf(Map.of(1L, 2, 2L, 2, 3L, 1)))));
+        assertTrue(ledger.reserve(LongIntMap.copyOf(Map.of(1L, 5))).isEmpty());
+        verify(stockJournalRepository, times(1)).saveAll(any());
+    }
+
+    @Test
+    void testRolledBackReservationIsGivenBack() {
+        when(productRepository.findAvailableStock(1L)).thenReturn(Optional.of(3L));
+        TransactionSynchronizationManager.initSynchronization();
+
+        assertTrue(ledger.reserve(LongIntMap.copyOf(Map.of(1L, 3))).isEmpty());
+        assertEquals(List.of(1L), ledger.reserve(LongIntMap.copyOf(Map.of(1L, 1))));
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertTrue(ledger.reserve(LongIntMap.copyOf(Map.of(1L, 3))).isEmpty());
+    }
+
+    @Test
+    void testReleaseIsVisibleOnlyAfterCommit() {
+        when(productRepository.findAvailableStock(1L)).thenReturn(Optional.of(0L));
+        TransactionSynchronizationManager.initSynchronization();
+
+        assertTrue(ledger.release(1L, 2));
+        assertEquals(List.of(1L), ledger.reserve(LongIntMap.copyOf(Map.of(1L, 1))));
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertTrue(ledger.reserve(LongIntMap.copyOf(Map.of(1L, 2))).isEmpty());
+    }
+
+    @Test
+    void testReleaseOfUnknownProduct() {
+        assertFalse(ledger.release(9L, 1));
+        verifyNoInteractions(stockJournalRepository);
+    }
+
+    @Test
+    void testSetKeepsPendingReservations() {
+        when(productRepository.findAvailableStock(1L)).thenReturn(Optional.of(10L));
+        ledger.reserve(LongIntMap.copyOf(Map.of(1L, 4)));
+
+        ledger.set(1L, 20);
+
+        assertEquals(List.of(1L), ledger.reserve(LongIntMap.copyOf(Map.of(1L, 21))));
+        assertTrue(ledger.reserve(LongIntMap.copyOf(Map.of(1L, 20))).isEmpty());
+        verify(stockJournalRepository).saveAll(argThat(entries ->
+                entries instanceof List<?> list && list.size() == 1
+                        && ((StockJournalEntry) list.getFirst()).getDelta() == 14));
+    }
+
+    @Test
+    void testFlushCoalescesDeltasPerProduct() {
+        productsProperties.getStock().setFlushBatchSize(10);
+        List<StockJournalEntry> batch = List.of(entry(1, 2L, -1), entry(2, 1L, -3), entry(3, 2L, -2), entry(4, 1L, 3));
+        when(stockJournalRepository.findByOrderByIdAsc(Limit.of(10))).thenReturn(batch);
+
+        ledger.flush();
+
+        verify(productRepository).incrementStock(2L, -3);
+        verify(productRepository, never()).incrementStock(eq(1L), anyInt());
+        verify(stockJournalRepository).deleteAllInBatch(batch);
+        verify(applicationEventPublisher).publishEvent(new ProductsChangedEvent(List.of(1L, 2L)));
+    }
+
+    @Test
+    void testFlushDrainsFullBatches() {
+        productsProperties.getStock().setFlushBatchSize(1);
+        when(stockJournalRepository.findByOrderByIdAsc(Limit.of(1)))
+                .thenReturn(List.of(entry(1, 1L, -1)))
+                .thenReturn(List.of(entry(2, 1L, -1)))
+                .thenReturn(List.of());
+
+        ledger.flush();
+
+        verify(productRepository, times(2)).incrementStock(1L, -1);
+        verify(stockJournalRepository, times(3)).findByOrderByIdAsc(Limit.of(1));
+    }
+
+    @Test
+    void testFlushStopsPollingOutsideInMemoryModeOnceDrained() {
+        productsProperties.getStock().setUpdateMode(ProductsProperties.StockUpdateMode.ATOMIC);
+        when(stockJournalRepository.findByOrderByIdAsc(any())).thenReturn(List.of());
+
+        ledger.flush();
+        ledger.flush();
+
+        verify(stockJournalRepository, times(1)).findByOrderByIdAsc(any());
+    }
+
+    @Test
+    void testFlushIsLeftToTheConsumerInstance() {
+        productsProperties.getStock().setConsumer(false);
+
+        ledger.flush();
+
+        verifyNoInteractions(stockJournalRepository, productRepository);
+    }
+}
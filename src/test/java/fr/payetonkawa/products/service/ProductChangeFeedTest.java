@@ -0,0 +1,119 @@
+package fr.payetonkawa.products.service;
+
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.dto.ProductChange;
+import fr.payetonkawa.products.dto.ProductChangePage;
+import fr.payetonkawa.products.entity.Product;
+import fr.payetonkawa.products.entity.ProductTombstone;
+import fr.payetonkawa.products.event.ProductsChangedEvent;
+import fr.payetonkawa.products.repository.ProductRepository;
+import fr.payetonkawa.products.repository.ProductTombstoneRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ProductChangeFeedTest {
+
+    private ProductRepository productRepository;
+    private ProductTombstoneRepository productTombstoneRepository;
+    private ProductChangeFeed productChangeFeed;
+    private final Instant old = Instant.now().minus(Duration.ofMinutes(1));
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        productTombstoneRepository = mock(ProductTombstoneRepository.class);
+        productChangeFeed = new ProductChangeFeed(productRepository, productTombstoneRepository, new ProductsProperties());
+    }
+
+    private static Product product(long id, long changeSeq, Instant updatedAt) {
+        Product product = new Product();
+        product.setId(id);
+        product.setChangeSeq(changeSeq);
+        product.setUpdatedAt(updatedAt);
+        return product;
+    }
+
+    private static ProductTombstone tombstone(long id, long changeSeq, Instant deletedAt) {
+        ProductTombstone tombstone = new ProductTombstone();
+        tombstone.setProductId(id);
+        tombstone.setChangeSeq(changeSeq);
+        tombstone.setDeletedAt(deletedAt);
+        return tombstone;
+    }
+
+    private static List<Long> changeSeqs(ProductChangePage page) {
+        return page.getChanges().stream().map(ProductChange::getChangeSeq).toList();
+    }
+
+    @Test
+    void testChangedProductsGetANewChangeSeqInOneStatement() {
+        productChangeFeed.onProductsChanged(new ProductsChangedEvent(List.of(3L, 1L, 3L)));
+
+        verify(productRepository).touchChangeSeq(argThat(ids -> Set.copyOf(ids).equals(Set.of(1L, 3L)) && ids.size() == 2), any());
+        verifyNoInteractions(productTombstoneRepository);
+    }
+
+    @Test
+    void testDeletedProductsLeaveATombstone() {
+        productChangeFeed.onProductsChanged(ProductsChangedEvent.deleted(4L));
+
+        verify(productTombstoneRepository).insertIfAbsent(eq(4L), any());
+        verify(productRepository, never()).touchChangeSeq(any(), any());
+    }
+
+    @Test
+    void testUpdatesAndTombstonesAreMergedInChangeSeqOrder() {
+        when(productRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(10L, Limit.of(3)))
+                .thenReturn(List.of(product(1, 11, old), product(2, 14, old)));
+        when(productTombstoneRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(10L, Limit.of(3)))
+                .thenReturn(List.of(tombstone(5, 12, old), tombstone(6, 15, old)));
+
+        ProductChangePage page = productChangeFeed.getChanges(10L, 3);
+
+        assertEquals(List.of(11L, 12L, 14L), changeSeqs(page));
+        assertTrue(page.getChanges().get(1).isDeleted());
+        assertNull(page.getChanges().get(1).getProduct());
+        assertEquals(14L, page.getCursor());
+    }
+
+    @Test
+    void testPageStopsAtFirstUnsettledChange() {
+        when(productRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(eq(10L), any()))
+                .thenReturn(List.of(product(1, 11, old), product(2, 13, Instant.now()), product(3, 14, old)));
+        when(productTombstoneRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(eq(10L), any())).thenReturn(List.of());
+
+        ProductChangePage page = productChangeFeed.getChanges(10L, 100);
+
+        // 14 est ancien, mais le servir ferait sauter 13 à un consommateur
+        assertEquals(List.of(11L), changeSeqs(page));
+        assertEquals(11L, page.getCursor());
+    }
+
+    @Test
+    void testEmptyPageKeepsCursor() {
+        when(productRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(eq(42L), any())).thenReturn(List.of());
+        when(productTombstoneRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(eq(42L), any())).thenReturn(List.of());
+
+        ProductChangePage page = productChangeFeed.getChanges(42L, 100);
+
+        assertTrue(page.getChanges().isEmpty());
+        assertEquals(42L, page.getCursor());
+    }
+
+    @Test
+    void testPurgeUsesTombstoneRetention() {
+        productChangeFeed.purge();
+
+        verify(productTombstoneRepository).deleteDeletedBefore(argThat(before ->
+                before.isBefore(Instant.now().minus(Duration.ofDays(29)))));
+    }
+}
@@ -1,19 +1,38 @@
 package fr.payetonkawa.products.service;
 
+import fr.payetonkawa.products.cache.ProductCache;
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.dto.BatchItemResult;
 import fr.payetonkawa.products.dto.ProductDto;
+import fr.payetonkawa.products.dto.ProductPage;
+import fr.payetonkawa.products.dto.ProductSearch;
+import fr.payetonkawa.products.dto.ProductSearchPage;
+import fr.payetonkawa.products.dto.ProductVersion;
+import fr.payetonkawa.products.dto.StockReservationResult;
 import fr.payetonkawa.products.entity.Product;
+import fr.payetonkawa.products.event.ProductsChangedEvent;
 import fr.payetonkawa.products.exception.MissingDataException;
+import fr.payetonkawa.products.exception.StockNotOwnedException;
+import fr.payetonkawa.products.messaging.OrderLine;
 import fr.payetonkawa.products.repository.ProductRepository;
+import fr.payetonkawa.products.util.LongIntMap;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-
+import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.Limit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -23,6 +42,18 @@ class ProductServiceTest {
     @Mock
     private ProductRepository productRepository;
 
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Mock
+    private InMemoryStockLedger stockLedger;
+
+    @Spy
+    private ProductsProperties productsProperties = new ProductsProperties();
+
+    @Spy
+    private ProductCache productCache = new ProductCache(new ProductsProperties());
+
     @InjectMocks
     private ProductService productService;
 
@@ -32,19 +63,100 @@ class ProductServiceTest {
     }
 
     @Test
-    void testGetAllProducts() {
+    void testGetProductsLastPage() {
         Product product = new Product();
         product.setId(1L);
         product.setName("Test");
         product.setPrice(10.0);
-        List<Product> products = List.of(product);
-        when(productRepository.findAll()).thenReturn(products);
+        when(productRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(11))).thenReturn(List.of(product));
+
+        ProductPage result = productService.getProducts(null, 10);
 
-        List<ProductDto> result = productService.getAllProducts();
+        assertEquals(1, result.getItems().size());
+        assertEquals("Test", result.getItems().get(0).getName());
+        assertFalse(result.hasNext());
+        verify(productRepository, never()).findAll();
+    }
 
-        assertEquals(1, result.size());
-        assertEquals("Test", result.get(0).getName());
-        verify(productRepository).findAll();
+    @Test
+    void testGetProductsReturnsCursorWhenMoreRows() {
+        List<Product> products = new ArrayList<>();
+        for (long id = 6; id <= 8; id++) {
+            Product product = new Product();
+            product.setId(id);
+            products.add(product);
+        }
+        when(productRepository.findByIdGreaterThanOrderByIdAsc(5L, Limit.of(3))).thenReturn(products);
+
+        ProductPage result = productService.getProducts(5L, 2);
+
+        assertEquals(2, result.getItems().size());
+        assertEquals(7L, result.getNextCursor());
+    }
+
+    @Test
+    void testGetAllProductsReturnsWholeCatalogWithoutCursor() {
+        when(productRepository.streamAll()).thenReturn(Stream.of(
+                ProductDto.builder().id(1L).build(), ProductDto.builder().id(2L).build()));
+
+        ProductPage result = productService.getAllProducts();
+
+        assertEquals(2, result.getItems().size());
+        assertFalse(result.hasNext());
+        verify(productRepository, never()).findByIdGreaterThanOrderByIdAsc(any(), any());
+    }
+
+    @Test
+    void testGetProductsClampsLimit() {
+        when(productRepository.findByIdGreaterThanOrderByIdAsc(any(), any())).thenReturn(List.of());
+
+        productService.getProducts(null, 100_000);
+
+        verify(productRepository).findByIdGreaterThanOrderByIdAsc(0L, Limit.of(ProductService.MAX_PAGE_SIZE + 1));
+    }
+
+    @Test
+    void testSearchProductsReturnsCursorOfLastItem() {
+        ProductSearch search = ProductSearch.builder().sort(ProductSearch.Sort.PRICE).limit(2).build();
+        List<Product> products = new ArrayList<>();
+        for (long id = 1; id <= 3; id++) {
+            Product product = new Product();
+            product.setId(id);
+            product.setPrice(id * 1.5);
+            products.add(product);
+        }
+        when(productRepository.search(search, 3)).thenReturn(products);
+
+        ProductSearchPage result = productService.searchProducts(search);
+
+        assertEquals(List.of(1L, 2L), result.getItems().stream().map(ProductDto::getId).toList());
+        assertEquals(new ProductSearch.Cursor("3.0", 2L), ProductSearch.Cursor.decode(result.getNextCursor()));
+    }
+
+    @Test
+    void testSearchProductsLastPageAndClampedLimit() {
+        ProductSearch search = ProductSearch.builder().limit(50_000).build();
+        when(productRepository.search(search, ProductService.MAX_PAGE_SIZE + 1)).thenReturn(List.of());
+
+        ProductSearchPage result = productService.searchProducts(search);
+
+        assertTrue(result.getItems().isEmpty());
+        assertFalse(result.hasNext());
+    }
+
+    @Test
+    void testGetProductVersionPrefersCacheOverProjection() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setVersion(3);
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+        when(productRepository.findVersionById(2L)).thenReturn(Optional.of(new ProductVersion(2L, 9, null)));
+        productService.getProductById(1L);
+
+        assertEquals("\"1-3\"", productService.getProductVersion(1L).orElseThrow().etag());
+        assertEquals("\"2-9\"", productService.getProductVersion(2L).orElseThrow().etag());
+        verify(productRepository, never()).findVersionById(1L);
+        verify(productRepository, never()).findById(2L);
     }
 
     @Test
@@ -70,6 +182,32 @@ class ProductServiceTest {
         assertTrue(result.isEmpty());
     }
 
+    @Test
+    void testGetProductByIdIsCached() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setName("Test");
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+
+        productService.getProductById(1L);
+        Optional<ProductDto> result = productService.getProductById(1L);
+
+        assertEquals("Test", result.orElseThrow().getName());
+        verify(productRepository, times(1)).findById(1L);
+        assertEquals(1, productCache.stats().hitCount());
+        assertEquals(1, productCache.stats().missCount());
+    }
+
+    @Test
+    void testGetProductByIdNotFoundIsNotCached() {
+        when(productRepository.findById(1L)).thenReturn(Optional.empty());
+
+        productService.getProductById(1L);
+        productService.getProductById(1L);
+
+        verify(productRepository, times(2)).findById(1L);
+    }
+
     @Test
     void testCreateProductValid() {
         ProductDto dto = ProductDto.builder()
@@ -96,13 +234,22 @@ class ProductServiceTest {
         assertEquals("Test", result.getName());
         assertEquals(10.0, result.getPrice());
         verify(productRepository).save(any(Product.class));
+        verify(applicationEventPublisher).publishEvent(new ProductsChangedEvent(List.of(1L)));
+    }
+
+    @Test
+    void testCreateProductWithNegativeStockIsInvalid() {
+        ProductDto dto = ProductDto.builder().name("Test").price(10.0).stock(-1).build();
+
+        assertThrows(IllegalArgumentException.class, () -> productService.createProduct(dto));
+        verify(productRepository, never()).save(any());
     }
 
     @Test
     void testCreateProductInvalid() {
         ProductDto dto = ProductDto.builder()
                 .name(null)
-                .price(0)
+                .price(0.0)
                 .build();
 
         assertThrows(IllegalArgumentException.class, () -> productService.createProduct(dto));
@@ -136,6 +283,7 @@ class ProductServiceTest {
         assertEquals("new desc", result.getDescription());
         assertEquals("green", result.getColor());
         assertEquals(10, result.getStock());
+        verify(applicationEventPublisher).publishEvent(new ProductsChangedEvent(List.of(1L)));
     }
 
     @Test
@@ -146,13 +294,133 @@ class ProductServiceTest {
         assertThrows(MissingDataException.class, () -> productService.updateProduct(1L, dto));
     }
 
+    @Test
+    void testCreateProductsReportsInvalidItemsAndSavesOthersInOneBatch() {
+        ProductDto valid = ProductDto.builder().name("A").description("d").price(1.0).stock(1).build();
+        ProductDto invalid = ProductDto.builder().name(null).description("d").price(1.0).build();
+        when(productRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Product> toSave = invocation.getArgument(0);
+            toSave.get(0).setId(10L);
+            return toSave;
+        });
+
+        List<BatchItemResult> results = productService.createProducts(List.of(invalid, valid));
+
+        assertEquals(2, results.size());
+        assertFalse(results.get(0).isSuccess());
+        assertEquals(0, results.get(0).getIndex());
+        assertTrue(results.get(1).isSuccess());
+        assertEquals(10L, results.get(1).getId());
+        verify(productRepository, times(1)).saveAll(argThat(products -> ((List<?>) products).size() == 1));
+        verify(productRepository, never()).save(any());
+    }
+
+    @Test
+    void testCreateProductsRejectsMissingDescriptionWithoutFailingTheBatch() {
+        ProductDto valid = ProductDto.builder().name("A").description("d").price(1.0).stock(1).build();
+        ProductDto withoutDescription = ProductDto.builder().name("B").price(1.0).stock(1).build();
+        when(productRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<BatchItemResult> results = productService.createProducts(List.of(valid, withoutDescription));
+
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertTrue(results.get(1).getError().contains("description"));
+        // La ligne invalide n'atteint pas la base : elle ne peut plus faire échouer l'insert groupé
+        verify(productRepository).saveAll(argThat(products -> ((List<?>) products).size() == 1));
+    }
+
+    @Test
+    void testUpdateProductsLoadsOnceAndReportsMissing() {
+        Product existing = new Product();
+        existing.setId(1L);
+        existing.setName("Old");
+        existing.setPrice(5.0);
+        when(productRepository.findAllById(any())).thenReturn(List.of(existing));
+
+        List<BatchItemResult> results = productService.updateProducts(List.of(
+                ProductDto.builder().id(1L).name("New").stock(-1).build(),
+                ProductDto.builder().id(2L).name("Other").build(),
+                ProductDto.builder().name("No id").build()
+        ));
+
+        assertTrue(results.get(0).isSuccess());
+        assertEquals("New", existing.getName());
+        assertEquals("Product not found", results.get(1).getError());
+        assertEquals(2L, results.get(1).getId());
+        assertFalse(results.get(2).isSuccess());
+        verify(productRepository, times(1)).findAllById(any());
+        verify(productRepository).saveAll(any());
+        verify(applicationEventPublisher).publishEvent(new ProductsChangedEvent(List.of(1L)));
+    }
+
+    @Test
+    void testUpdateProductsKeepsStockAndPriceWhenOmitted() {
+        Product existing = new Product();
+        existing.setId(1L);
+        existing.setName("Arabica");
+        existing.setPrice(5.0);
+        existing.setStock(40);
+        when(productRepository.findAllById(any())).thenReturn(List.of(existing));
+
+        List<BatchItemResult> results = productService.updateProducts(List.of(
+                ProductDto.builder().id(1L).name("Robusta").build()));
+
+        assertTrue(results.getFirst().isSuccess());
+        assertEquals("Robusta", existing.getName());
+        assertEquals(5.0, existing.getPrice());
+        assertEquals(40, existing.getStock());
+    }
+
+    @Test
+    void testCreateProductWithoutStockStartsAtZero() {
+        Product saved = new Product();
+        saved.setId(1L);
+        when(productRepository.save(any(Product.class))).thenReturn(saved);
+
+        productService.createProduct(ProductDto.builder().name("Arabica").description("Grains").price(5.0).build());
+
+        verify(productRepository).save(argThat(product -> product.getStock() == 0));
+    }
+
+    @Test
+    void testGetProductsByIdsUsesOneQueryForMisses() {
+        productCache.get(2L, id -> Optional.of(ProductDto.builder().id(id).name("Cached").build()));
+        Product product = new Product();
+        product.setId(1L);
+        product.setName("Loaded");
+        when(productRepository.findAllById(any())).thenReturn(List.of(product));
+
+        List<ProductDto> result = productService.getProductsByIds(List.of(2L, 1L, 3L));
+
+        assertEquals(List.of("Cached", "Loaded"), result.stream().map(ProductDto::getName).toList());
+        verify(productRepository, times(1)).findAllById(argThat(ids ->
+                ((Collection<?>) ids).containsAll(List.of(1L, 3L)) && !((Collection<?>) ids).contains(2L)));
+    }
+
+    @Test
+    void testBatchTooLargeIsRejected() {
+        List<ProductDto> products = Collections.nCopies(ProductService.MAX_PAGE_SIZE + 1, new ProductDto());
+
+        assertThrows(IllegalArgumentException.class, () -> productService.createProducts(products));
+    }
+
     @Test
     void testDeleteProduct() {
-        doNothing().when(productRepository).deleteById(1L);
+        when(productRepository.existsById(1L)).thenReturn(true);
 
         productService.deleteProduct(1L);
 
         verify(productRepository).deleteById(1L);
+        verify(applicationEventPublisher).publishEvent(ProductsChangedEvent.deleted(1L));
+    }
+
+    @Test
+    void testDeleteUnknownProductLeavesNoTombstone() {
+        productService.deleteProduct(1L);
+
+        verify(productRepository, never()).deleteById(any());
+        verifyNoInteractions(applicationEventPublisher);
     }
 
     @Test
@@ -161,18 +429,63 @@ class ProductServiceTest {
         product.setId(1L);
         product.setStock(10);
 
-        Map<String, Object> item = new HashMap<>();
-        item.put("itemId", 1L);
-        item.put("quantity", 5);
+        OrderLine item = new OrderLine(1L, 5);
 
-        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
-        when(productRepository.save(any(Product.class))).thenReturn(product);
+        when(productRepository.findAllById(any())).thenReturn(List.of(product));
+        when(productRepository.decrementStocks(LongIntMap.copyOf(Map.of(1L, 5)))).thenReturn(1);
 
-        boolean result = productService.verifyAndUpdateStock(List.of(item));
+        StockReservationResult result = productService.verifyAndUpdateStock(List.of(item));
 
-        assertTrue(result);
-        verify(productRepository, times(2)).findById(1L);
-        verify(productRepository).save(any(Product.class));
+        assertTrue(result.isConfirmed());
+        assertTrue(result.getFailedItemIds().isEmpty());
+        verify(productRepository).findAllById(any());
+        verify(productRepository, never()).findById(any());
+        verify(productRepository).decrementStocks(LongIntMap.copyOf(Map.of(1L, 5)));
+        verify(productRepository, never()).saveAll(any());
+        verify(applicationEventPublisher).publishEvent(new ProductsChangedEvent(List.of(1L)));
+    }
+
+    @Test
+    void testVerifyAndUpdateStockOptimisticMode() {
+        productsProperties.getStock().setUpdateMode(ProductsProperties.StockUpdateMode.OPTIMISTIC);
+        Product product = new Product();
+        product.setId(1L);
+        product.setStock(10);
+
+        OrderLine item = new OrderLine(1L, 5);
+
+        when(productRepository.findAllById(any())).thenReturn(List.of(product));
+
+        StockReservationResult result = productService.verifyAndUpdateStock(List.of(item));
+
+        assertTrue(result.isConfirmed());
+        assertEquals(5, product.getStock());
+        verify(productRepository).saveAll(any());
+        verify(productRepository, never()).decrementStocks(any());
+    }
+
+    @Test
+    void testVerifyAndUpdateStockLostRaceRollsBack() {
+        Product first = new Product();
+        first.setId(1L);
+        first.setStock(10);
+        Product second = new Product();
+        second.setId(2L);
+        second.setStock(10);
+
+        List<OrderLine> items = List.of(
+                new OrderLine(2L, 4),
+                new OrderLine(1L, 3)
+        );
+
+        when(productRepository.findAllById(any())).thenReturn(List.of(first, second));
+        // Le produit 2 a été vendu entre la lecture et l'UPDATE
+        when(productRepository.decrementStocks(LongIntMap.copyOf(Map.of(1L, 3, 2L, 4)))).thenReturn(1);
+
+        // Rien n'est compensé à la main : l'exception annule la transaction et le listener rejoue l'événement
+        assertThrows(ConcurrencyFailureException.class, () -> productService.verifyAndUpdateStock(items));
+        verify(productRepository, never()).incrementStock(any(), anyInt());
+        verify(applicationEventPublisher, never()).publishEvent(any());
     }
 
     @Test
@@ -181,40 +494,259 @@ class ProductServiceTest {
         product.setId(1L);
         product.setStock(2);
 
-        Map<String, Object> item = new HashMap<>();
-        item.put("itemId", 1L);
-        item.put("quantity", 5);
+        OrderLine item = new OrderLine(1L, 5);
 
-        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+        when(productRepository.findAllById(any())).thenReturn(List.of(product));
 
-        boolean result = productService.verifyAndUpdateStock(List.of(item));
+        StockReservationResult result = productService.verifyAndUpdateStock(List.of(item));
 
-        assertFalse(result);
-        verify(productRepository).findById(1L);
-        verify(productRepository, never()).save(any(Product.class));
+        assertFalse(result.isConfirmed());
+        assertEquals(List.of(1L), result.getFailedItemIds());
+        assertEquals(2, product.getStock());
+        verify(productRepository, never()).decrementStocks(any());
     }
 
     @Test
-    void testRestoreStockProductFound() {
+    void testVerifyAndUpdateStockReportsMissingAndMergesDuplicateLines() {
         Product product = new Product();
         product.setId(1L);
         product.setStock(5);
 
-        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
-        when(productRepository.save(any(Product.class))).thenReturn(product);
+        List<OrderLine> items = List.of(
+                new OrderLine(1L, 3),
+                new OrderLine(1L, 3),
+                new OrderLine(2L, 1)
+        );
+
+        when(productRepository.findAllById(any())).thenReturn(List.of(product));
+
+        StockReservationResult result = productService.verifyAndUpdateStock(items);
+
+        assertFalse(result.isConfirmed());
+        assertEquals(List.of(1L, 2L), result.getFailedItemIds());
+        assertEquals(5, product.getStock());
+        verify(productRepository, never()).decrementStocks(any());
+    }
+
+    @Test
+    void testRestoreStockProductFound() {
+        when(productRepository.incrementStock(1L, 3)).thenReturn(1);
 
         productService.restoreStock(1L, 3);
 
-        assertEquals(8, product.getStock());
-        verify(productRepository).save(product);
+        verify(productRepository).incrementStock(1L, 3);
+        verify(productRepository, never()).findById(any());
+        verify(applicationEventPublisher).publishEvent(new ProductsChangedEvent(List.of(1L)));
+        verify(productRepository, never()).save(any(Product.class));
     }
 
     @Test
     void testRestoreStockProductNotFound() {
-        when(productRepository.findById(1L)).thenReturn(Optional.empty());
+        when(productRepository.incrementStock(1L, 3)).thenReturn(0);
 
         productService.restoreStock(1L, 3);
 
         verify(productRepository, never()).save(any(Product.class));
+        verifyNoInteractions(applicationEventPublisher);
+    }
+
+    private static Product productWithStock(long id, int stock) {
+        Product product = new Product();
+        product.setId(id);
+        product.setStock(stock);
+        return product;
+    }
+
+    @Test
+    void testAdjustStockAppliesAllDeltasWithOneLockedReadAndOneWrite() {
+        Product reserved = productWithStock(1L, 10);
+        Product restored = productWithStock(2L, 4);
+        when(productRepository.findAllByIdForUpdate(any())).thenReturn(List.of(reserved, restored));
+
+        StockReservationResult result = productService.adjustStock(LongIntMap.copyOf(Map.of(1L, 1, 2L, -2, 3L, 0)));
+
+        assertTrue(result.isConfirmed());
+        assertEquals(9, reserved.getStock());
+        assertEquals(6, restored.getStock());
+        // Ids triés, sans les lignes inchangées
+        verify(productRepository).findAllByIdForUpdate(argThat(ids -> List.copyOf(ids).equals(List.of(1L, 2L))));
+        verify(productRepository).saveAll(argThat(products -> products instanceof Collection<?> saved && saved.size() == 2));
+        verify(productRepository, never()).findById(any());
+        verify(productRepository, never()).decrementStocks(any());
+        verify(productRepository, never()).incrementStock(any(), anyInt());
+        verify(applicationEventPublisher).publishEvent(any(ProductsChangedEvent.class));
+    }
+
+    @Test
+    void testAdjustStockInsufficientReportsEveryFailedItemAndWritesNothing() {
+        Product product = productWithStock(1L, 5);
+        when(productRepository.findAllByIdForUpdate(any())).thenReturn(List.of(product, productWithStock(3L, 1)));
+
+        StockReservationResult result = productService.adjustStock(LongIntMap.copyOf(Map.of(1L, 9, 2L, 1, 3L, -1)));
+
+        assertFalse(result.isConfirmed());
+        assertEquals(List.of(1L, 2L), result.getFailedItemIds());
+        assertEquals(5, product.getStock());
+        verify(productRepository, never()).saveAll(any());
+        verifyNoInteractions(applicationEventPublisher);
+    }
+
+    @Test
+    void testAdjustStockWithoutChangesSkipsTheDatabase() {
+        StockReservationResult result = productService.adjustStock(LongIntMap.copyOf(Map.of(1L, 0)));
+
+        assertTrue(result.isConfirmed());
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void testVerifyAndUpdateStockBatchReservesOrdersInArrivalOrderWithOneLockedRead() {
+        Product contended = productWithStock(1L, 5);
+        Product other = productWithStock(2L, 10);
+        when(productRepository.findAllByIdForUpdate(any())).thenReturn(List.of(contended, other));
+
+        List<StockReservationResult> results = productService.verifyAndUpdateStockBatch(List.of(
+                List.of(new OrderLine(1L, 3), new OrderLine(2L, 1)),
+                List.of(new OrderLine(1L, 2), new OrderLine(1L, 1)),
+                List.of(new OrderLine(2L, 4), new OrderLine(9L, 1)),
+                List.of(new OrderLine(1L, 2))));
+
+        assertTrue(results.get(0).isConfirmed());
+        // La deuxième commande voit le stock laissé par la première, et reste tout ou rien
+        assertEquals(List.of(1L), results.get(1).getFailedItemIds());
+        assertEquals(List.of(9L), results.get(2).getFailedItemIds());
+        assertTrue(results.get(3).isConfirmed());
+        assertEquals(0, contended.getStock());
+        assertEquals(9, other.getStock());
+        verify(productRepository).findAllByIdForUpdate(argThat(ids -> List.copyOf(ids).equals(List.of(1L, 2L, 9L))));
+        verify(productRepository).saveAll(argThat(products -> products instanceof Collection<?> saved && saved.size() == 2));
+        verify(productRepository, never()).decrementStocks(any());
+        verify(applicationEventPublisher).publishEvent(new ProductsChangedEvent(List.of(1L, 2L)));
+    }
+
+    @Test
+    void testVerifyAndUpdateStockBatchWithoutReservationWritesNothing() {
+        when(productRepository.findAllByIdForUpdate(any())).thenReturn(List.of(productWithStock(1L, 1)));
+
+        List<StockReservationResult> results = productService.verifyAndUpdateStockBatch(
+                List.of(List.of(new OrderLine(1L, 2))));
+
+        assertFalse(results.getFirst().isConfirmed());
+        verify(productRepository, never()).saveAll(any());
+        verifyNoInteractions(applicationEventPublisher);
+    }
+
+    @Test
+    void testVerifyAndUpdateStockInMemoryModeSkipsTheDatabase() {
+        productsProperties.getStock().setUpdateMode(ProductsProperties.StockUpdateMode.IN_MEMORY);
+        when(stockLedger.reserve(LongIntMap.copyOf(Map.of(1L, 6)))).thenReturn(List.of());
+
+        StockReservationResult result = productService.verifyAndUpdateStock(
+                List.of(new OrderLine(1L, 5), new OrderLine(1L, 1)));
+
+        assertTrue(result.isConfirmed());
+        verifyNoInteractions(productRepository, applicationEventPublisher);
+    }
+
+    @Test
+    void testVerifyAndUpdateStockInMemoryModeRejected() {
+        productsProperties.getStock().setUpdateMode(ProductsProperties.StockUpdateMode.IN_MEMORY);
+        when(stockLedger.reserve(any())).thenReturn(List.of(2L));
+
+        StockReservationResult result = productService.verifyAndUpdateStock(List.of(new OrderLine(2L, 1)));
+
+        assertFalse(result.isConfirmed());
+        assertEquals(List.of(2L), result.getFailedItemIds());
+    }
+
+    @Test
+    void testRestoreStockInMemoryMode() {
+        productsProperties.getStock().setUpdateMode(ProductsProperties.StockUpdateMode.IN_MEMORY);
+        when(stockLedger.release(1L, 3)).thenReturn(true);
+
+        productService.restoreStock(1L, 3);
+
+        verify(stockLedger).release(1L, 3);
+        verify(productRepository, never()).incrementStock(any(), anyInt());
+    }
+
+    @Test
+    void testUpdateProductInMemoryModeSetsStockThroughLedger() {
+        productsProperties.getStock().setUpdateMode(ProductsProperties.StockUpdateMode.IN_MEMORY);
+        Product existing = new Product();
+        existing.setId(1L);
+        existing.setStock(10);
+        when(productRepository.findById(1L)).thenReturn(Optional.of(existing));
+        when(productRepository.save(existing)).thenReturn(existing);
+        ProductDto changes = new ProductDto();
+        changes.setStock(25);
+
+        ProductDto result = productService.updateProduct(1L, changes);
+
+        assertEquals(25, result.getStock());
+        verify(stockLedger).set(1L, 25);
+    }
+
+    @Test
+    void testUpdateProductInMemoryModeLeavesEntityStockToTheLedger() {
+        productsProperties.getStock().setUpdateMode(ProductsProperties.StockUpdateMode.IN_MEMORY);
+        Product existing = new Product();
+        existing.setId(1L);
+        existing.setName("Arabica");
+        existing.setStock(10);
+        when(productRepository.findById(1L)).thenReturn(Optional.of(existing));
+        when(productRepository.save(existing)).thenReturn(existing);
+        ProductDto changes = new ProductDto();
+        changes.setName("Robusta");
+        changes.setStock(50);
+
+        ProductDto result = productService.updateProduct(1L, changes);
+
+        // Le report du registre ajoute l'écart 50 - 10 : l'entité doit garder l'ancienne valeur
+        assertEquals(10, existing.getStock());
+        assertEquals("Robusta", existing.getName());
+        assertEquals(50, result.getStock());
+        verify(stockLedger).set(1L, 50);
+    }
+
+    @Test
+    void testUpdateProductInMemoryModeRejectsStockOnNonConsumerInstance() {
+        productsProperties.getStock().setUpdateMode(ProductsProperties.StockUpdateMode.IN_MEMORY);
+        productsProperties.getStock().setConsumer(false);
+        Product existing = new Product();
+        existing.setId(1L);
+        existing.setStock(10);
+        when(productRepository.findById(1L)).thenReturn(Optional.of(existing));
+        ProductDto changes = new ProductDto();
+        changes.setStock(25);
+
+        assertThrows(StockNotOwnedException.class, () -> productService.updateProduct(1L, changes));
+        verifyNoInteractions(stockLedger, applicationEventPublisher);
+        verify(productRepository, never()).save(any());
+    }
+
+    @Test
+    void testUpdateProductsInMemoryModeOnNonConsumerInstanceOnlyRejectsStockChanges() {
+        productsProperties.getStock().setUpdateMode(ProductsProperties.StockUpdateMode.IN_MEMORY);
+        productsProperties.getStock().setConsumer(false);
+        Product first = new Product();
+        first.setId(1L);
+        first.setName("Arabica");
+        first.setStock(10);
+        Product second = new Product();
+        second.setId(2L);
+        second.setName("Moka");
+        when(productRepository.findAllById(any())).thenReturn(List.of(first, second));
+
+        List<BatchItemResult> results = productService.updateProducts(List.of(
+                ProductDto.builder().id(1L).name("Robusta").stock(25).build(),
+                ProductDto.builder().id(2L).name("Java").stock(-1).build()
+        ));
+
+        assertFalse(results.get(0).isSuccess());
+        assertEquals("Arabica", first.getName());
+        assertTrue(results.get(1).isSuccess());
+        assertEquals("Java", second.getName());
+        verifyNoInteractions(stockLedger);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,109 @@
+package fr.payetonkawa.products.service;
+
+import fr.payetonkawa.products.config.ProductsProperties;
+import fr.payetonkawa.products.entity.StockReservation;
+import fr.payetonkawa.products.event.EventPublisher;
+import fr.payetonkawa.products.messaging.OrderLine;
+import fr.payetonkawa.products.repository.StockReservationRepository;
+import fr.payetonkawa.products.util.LongIntMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StockReservationServiceTest {
+
+    private StockReservationRepository stockReservationRepository;
+    private ProductService productService;
+    private EventPublisher eventPublisher;
+    private ProductsProperties productsProperties;
+    private StockReservationService stockReservationService;
+
+    @BeforeEach
+    void setUp() {
+        stockReservationRepository = mock(StockReservationRepository.class);
+        productService = mock(ProductService.class);
+        eventPublisher = mock(EventPublisher.class);
+        productsProperties = new ProductsProperties();
+        productsProperties.getReservations().setTtl(Duration.ofMinutes(30));
+        productsProperties.getReservations().setExpiryBatchSize(3);
+        stockReservationService = new StockReservationService(stockReservationRepository, productService,
+                eventPublisher, TransactionOperations.withoutTransaction(), productsProperties);
+    }
+
+    private static StockReservation reservation(long orderId, long productId, int quantity) {
+        return new StockReservation(orderId, productId, quantity, Instant.now().minusSeconds(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testHoldMergesLinesAndSetsExpiry() {
+        Instant before = Instant.now();
+
+        stockReservationService.hold(42L, List.of(new OrderLine(1L, 2), new OrderLine(1L, 1), new OrderLine(2L, 5)));
+
+        ArgumentCaptor<List<StockReservation>> saved = ArgumentCaptor.forClass(List.class);
+        verify(stockReservationRepository).saveAll(saved.capture());
+        assertEquals(2, saved.getValue().size());
+        assertEquals(3, saved.getValue().getFirst().getQuantity());
+        assertFalse(saved.getValue().getFirst().getExpiresAt().isBefore(before.plus(Duration.ofMinutes(30))));
+    }
+
+    @Test
+    void testReleaseReturnsHeldQuantitiesAndDeletesRows() {
+        List<StockReservation> rows = List.of(reservation(42L, 1L, 2), reservation(42L, 2L, 1));
+        when(stockReservationRepository.findByOrderId(42L)).thenReturn(rows);
+
+        assertEquals(LongIntMap.copyOf(Map.of(1L, 2, 2L, 1)), stockReservationService.release(42L));
+        verify(stockReservationRepository).deleteAllInBatch(rows);
+    }
+
+    @Test
+    void testExpireRestoresOncePerProductAndNotifiesEachOrder() {
+        List<StockReservation> full = List.of(reservation(1L, 10L, 1), reservation(2L, 10L, 2), reservation(2L, 11L, 1));
+        List<StockReservation> rest = List.of(reservation(3L, 11L, 4));
+        when(stockReservationRepository.findByExpiresAtBeforeOrderByExpiresAtAsc(any(), eq(Limit.of(3))))
+                .thenReturn(full)
+                .thenReturn(rest);
+
+        stockReservationService.expire();
+
+        verify(productService).restoreStock(10L, 3);
+        verify(productService).restoreStock(11L, 1);
+        verify(productService).restoreStock(11L, 4);
+        verify(stockReservationRepository).deleteAllInBatch(full);
+        verify(stockReservationRepository).deleteAllInBatch(rest);
+        verify(eventPublisher, times(3)).enqueue(eq("product.stock.expired"), any());
+        // Lot incomplet : pas de requête supplémentaire
+        verify(stockReservationRepository, times(2)).findByExpiresAtBeforeOrderByExpiresAtAsc(any(), any());
+    }
+
+    @Test
+    void testExpireIsDisabledWithoutTtl() {
+        productsProperties.getReservations().setTtl(Duration.ZERO);
+
+        stockReservationService.expire();
+
+        assertFalse(stockReservationService.isEnabled());
+        verifyNoInteractions(stockReservationRepository, productService, eventPublisher);
+    }
+
+    @Test
+    void testExpireIsLeftToTheConsumerInstanceInMemoryMode() {
+        productsProperties.getStock().setUpdateMode(ProductsProperties.StockUpdateMode.IN_MEMORY);
+        productsProperties.getStock().setConsumer(false);
+
+        stockReservationService.expire();
+
+        verifyNoInteractions(stockReservationRepository, productService, eventPublisher);
+    }
+}
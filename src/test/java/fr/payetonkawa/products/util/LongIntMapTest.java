@@ -0,0 +1,70 @@
+package fr.payetonkawa.products.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongIntMapTest {
+
+    @Test
+    void testAddCumulatesAndKeepsInsertionOrder() {
+        LongIntMap map = new LongIntMap();
+        map.add(5L, 2);
+        map.add(1L, 3);
+        map.add(5L, -2);
+        map.put(9L, 7);
+
+        assertEquals(3, map.size());
+        assertEquals(0, map.get(5L));
+        assertTrue(map.containsKey(5L));
+        assertFalse(map.containsKey(2L));
+        assertEquals(0, map.get(2L));
+        assertArrayEquals(new long[]{5L, 1L, 9L}, map.keys());
+        assertArrayEquals(new long[]{1L, 5L, 9L}, map.sortedKeys());
+        assertEquals(List.of(5L, 1L, 9L), map.keyList());
+
+        List<String> visited = new ArrayList<>();
+        map.forEach((key, value) -> visited.add(key + "=" + value));
+        assertEquals(List.of("5=0", "1=3", "9=7"), visited);
+    }
+
+    @Test
+    void testGrowsAndMatchesHashMapOnCollidingKeys() {
+        LongIntMap map = new LongIntMap(1);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            // Multiples d'une grande puissance de deux et clés négatives : mêmes bits bas
+            long key = (random.nextInt(500) - 250) * (1L << 32);
+            int delta = random.nextInt(10);
+            map.add(key, delta);
+            expected.merge(key, delta, Integer::sum);
+        }
+
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+        assertEquals(LongIntMap.copyOf(expected), map);
+    }
+
+    @Test
+    void testEqualityIgnoresInsertionOrder() {
+        LongIntMap map = new LongIntMap();
+        map.put(1L, 2);
+        map.put(2L, 1);
+        LongIntMap reversed = new LongIntMap();
+        reversed.put(2L, 1);
+        reversed.put(1L, 2);
+
+        assertEquals(map, reversed);
+        assertEquals(map.hashCode(), reversed.hashCode());
+        reversed.add(1L, 1);
+        assertNotEquals(map, reversed);
+        assertEquals("{1=2, 2=1}", map.toString());
+    }
+}